@@ -14,7 +14,8 @@ CREATE TABLE IF NOT EXISTS `music_setting` (
     `volume` INT NOT NULL,
     `repeat` VARCHAR(30) NOT NULL,
     `show_np` BOOLEAN NOT NULL,
-    `restrict_channel` BIGINT NULL
+    `restrict_channel` BIGINT NULL,
+    `quality` VARCHAR(30) NOT NULL DEFAULT 'STANDARD'
 ) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
 
 # Music queue cache
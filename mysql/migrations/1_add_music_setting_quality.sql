@@ -0,0 +1,3 @@
+# Adds audio quality profile to existing databases; new databases get it from init/1_create_tables.sql
+# Applied by MariaMusicSettingRepository on startup, as init/ only runs on an empty database
+ALTER TABLE `music_setting` ADD COLUMN IF NOT EXISTS `quality` VARCHAR(30) NOT NULL DEFAULT 'STANDARD';
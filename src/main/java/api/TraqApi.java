@@ -16,6 +16,14 @@ public interface TraqApi {
     User getUserByID(UUID id);
     @Nullable
     List<WebRTCUserState> getWebRTCState();
+
+    /**
+     * Retrieves the WebRTC states of all users, indexed by user and by channel.
+     * The states are cached for a short while, so that bursts of lookups cost a single request.
+     * @return Snapshot. null if failed to retrieve.
+     */
+    @Nullable
+    WebRTCStateSnapshot getWebRTCStateSnapshot();
     @Nullable
     WebRTCAuthenticateResult authenticateWebRTC(String peerId);
 }
@@ -10,8 +10,15 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static utils.EnvConfig.envLong;
 
 public class TraqApiImpl implements TraqApi {
+    // time the WebRTC states are reused for, retrieved on every lookup if set to 0
+    private static final long WEBRTC_STATE_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(
+            envLong("TRAQ_WEBRTC_STATE_TTL_MILLIS", 1000));
+
     private final MessageApi messageApi;
     private final ChannelApi channelApi;
     private final UserApi userApi;
@@ -19,6 +26,11 @@ public class TraqApiImpl implements TraqApi {
 
     private Map<UUID, User> usersCache;
 
+    // held while retrieving the WebRTC states, so that concurrent lookups share a single request
+    private final Object webRTCStateLock;
+    @Nullable
+    private volatile WebRTCStateSnapshot webRTCState;
+
     /**
      * Creates new traQ API client.
      * @param basePath Base path. e.g. "http://q.trap.jp/api/v3"
@@ -35,6 +47,7 @@ public class TraqApiImpl implements TraqApi {
         this.channelApi = new ChannelApi(client);
         this.userApi = new UserApi(client);
         this.webrtcApi = new WebrtcApi(client);
+        this.webRTCStateLock = new Object();
     }
 
     private static void handleError(ApiException e) {
@@ -103,11 +116,39 @@ public class TraqApiImpl implements TraqApi {
     @Nullable
     @Override
     public List<WebRTCUserState> getWebRTCState() {
-        try {
-            return webrtcApi.getWebRTCState();
-        } catch (ApiException e) {
-            handleError(e);
-            return null;
+        WebRTCStateSnapshot snapshot = getWebRTCStateSnapshot();
+        return snapshot != null ? snapshot.getStates() : null;
+    }
+
+    private static boolean isFresh(@Nullable WebRTCStateSnapshot snapshot, long now) {
+        return snapshot != null && now - snapshot.getRetrievedAt() < WEBRTC_STATE_TTL_NANOS;
+    }
+
+    @Nullable
+    @Override
+    public WebRTCStateSnapshot getWebRTCStateSnapshot() {
+        WebRTCStateSnapshot snapshot = this.webRTCState;
+        if (isFresh(snapshot, System.nanoTime())) {
+            return snapshot;
+        }
+
+        long requestedAt = System.nanoTime();
+        synchronized (this.webRTCStateLock) {
+            // retrieved by another thread while waiting
+            snapshot = this.webRTCState;
+            if (snapshot != null && snapshot.getRetrievedAt() >= requestedAt) {
+                return snapshot;
+            }
+
+            try {
+                List<WebRTCUserState> states = webrtcApi.getWebRTCState();
+                snapshot = new WebRTCStateSnapshot(states, System.nanoTime());
+            } catch (ApiException e) {
+                handleError(e);
+                return null;
+            }
+            this.webRTCState = snapshot;
+            return snapshot;
         }
     }
 
@@ -0,0 +1,64 @@
+package api;
+
+import com.github.motoki317.traq4j.model.WebRTCUserState;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * WebRTC states of all users at one point in time, indexed by user and by channel.
+ */
+public class WebRTCStateSnapshot {
+    private final List<WebRTCUserState> states;
+    private final Map<UUID, WebRTCUserState> byUser;
+    private final Map<UUID, List<WebRTCUserState>> byChannel;
+    // System.nanoTime() at which the response was received
+    private final long retrievedAt;
+
+    WebRTCStateSnapshot(List<WebRTCUserState> states, long retrievedAt) {
+        this.states = Collections.unmodifiableList(states);
+        this.byUser = new HashMap<>();
+        this.byChannel = new HashMap<>();
+        for (WebRTCUserState state : states) {
+            this.byUser.put(state.getUserId(), state);
+            this.byChannel.computeIfAbsent(state.getChannelId(), k -> new ArrayList<>()).add(state);
+        }
+        this.retrievedAt = retrievedAt;
+    }
+
+    /**
+     * Retrieves the states of all users.
+     * @return States.
+     */
+    public List<WebRTCUserState> getStates() {
+        return this.states;
+    }
+
+    /**
+     * Retrieves the state of a user.
+     * @param userId User ID.
+     * @return State. null if the user is not in any voice channel.
+     */
+    @Nullable
+    public WebRTCUserState getUserState(UUID userId) {
+        return this.byUser.get(userId);
+    }
+
+    /**
+     * Retrieves the states of the users in a channel.
+     * @param channelId Channel ID.
+     * @return States. Empty if no one is in the channel.
+     */
+    public List<WebRTCUserState> getChannelStates(UUID channelId) {
+        return Collections.unmodifiableList(this.byChannel.getOrDefault(channelId, List.of()));
+    }
+
+    long getRetrievedAt() {
+        return this.retrievedAt;
+    }
+}
@@ -96,7 +96,14 @@ public class AppImpl implements Runnable, App {
         this.skywayApi = new SkywayApiImpl(this.logger);
         this.responseManager = updaterFactory.getResponseManager();
         this.listeners = new ArrayList<>();
-        this.musicServer = new MusicServerImpl(Integer.parseInt(System.getenv("MUSIC_PORT")), this);
+        int musicPort = Integer.parseInt(System.getenv("MUSIC_PORT"));
+        // the audio stream is only read by the local browser, so it defaults to the port next to the music server
+        String musicStreamPort = System.getenv("MUSIC_STREAM_PORT");
+        this.musicServer = new MusicServerImpl(
+                musicPort,
+                musicStreamPort == null || musicStreamPort.isEmpty() ? musicPort + 1 : Integer.parseInt(musicStreamPort),
+                this
+        );
 
         this.database = new DatabaseMariaImpl(this.logger);
 
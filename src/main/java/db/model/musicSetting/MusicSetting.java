@@ -1,5 +1,6 @@
 package db.model.musicSetting;
 
+import music.AudioQualityProfile;
 import music.RepeatState;
 
 import javax.annotation.Nullable;
@@ -12,13 +13,16 @@ public class MusicSetting implements MusicSettingId {
     private boolean showNp;
     @Nullable
     private Long restrictChannel;
+    private AudioQualityProfile quality;
 
-    public MusicSetting(String channelId, int volume, RepeatState repeat, boolean showNp, @Nullable Long restrictChannel) {
+    public MusicSetting(String channelId, int volume, RepeatState repeat, boolean showNp, @Nullable Long restrictChannel,
+                        AudioQualityProfile quality) {
         this.channelId = channelId;
         this.volume = volume;
         this.repeat = repeat;
         this.showNp = showNp;
         this.restrictChannel = restrictChannel;
+        this.quality = quality;
     }
 
     public static MusicSetting getDefault(String channelId) {
@@ -27,7 +31,8 @@ public class MusicSetting implements MusicSettingId {
                 100,
                 RepeatState.OFF,
                 true,
-                null
+                null,
+                AudioQualityProfile.STANDARD
         );
     }
 
@@ -52,6 +57,10 @@ public class MusicSetting implements MusicSettingId {
         return restrictChannel;
     }
 
+    public AudioQualityProfile getQuality() {
+        return quality;
+    }
+
     public void setVolume(int volume) {
         this.volume = volume;
     }
@@ -68,6 +77,10 @@ public class MusicSetting implements MusicSettingId {
         this.restrictChannel = restrictChannel;
     }
 
+    public void setQuality(AudioQualityProfile quality) {
+        this.quality = quality;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -77,11 +90,12 @@ public class MusicSetting implements MusicSettingId {
                 volume == that.volume &&
                 showNp == that.showNp &&
                 repeat == that.repeat &&
-                Objects.equals(restrictChannel, that.restrictChannel);
+                Objects.equals(restrictChannel, that.restrictChannel) &&
+                quality == that.quality;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(channelId, volume, repeat, showNp, restrictChannel);
+        return Objects.hash(channelId, volume, repeat, showNp, restrictChannel, quality);
     }
 }
@@ -5,6 +5,7 @@ import db.model.musicSetting.MusicSetting;
 import db.model.musicSetting.MusicSettingId;
 import db.repository.base.MusicSettingRepository;
 import log.Logger;
+import music.AudioQualityProfile;
 import music.RepeatState;
 import org.jetbrains.annotations.NotNull;
 
@@ -16,6 +17,10 @@ import java.util.List;
 class MariaMusicSettingRepository extends MusicSettingRepository {
     MariaMusicSettingRepository(ConnectionPool db, Logger logger) {
         super(db, logger);
+        // mysql/init only runs on an empty database, so apply mysql/migrations/1_add_music_setting_quality.sql here
+        this.execute(
+                "ALTER TABLE `music_setting` ADD COLUMN IF NOT EXISTS `quality` VARCHAR(30) NOT NULL DEFAULT 'STANDARD'"
+        );
     }
 
     @Override
@@ -26,19 +31,23 @@ class MariaMusicSettingRepository extends MusicSettingRepository {
                 res.getInt(2),
                 RepeatState.valueOf(res.getString(3)),
                 res.getBoolean(4),
-                (restrictChannel = res.getLong(5)) != 0 ? restrictChannel : null
+                (restrictChannel = res.getLong(5)) != 0 ? restrictChannel : null,
+                // in case the migration could not be applied
+                res.getMetaData().getColumnCount() >= 6
+                        ? AudioQualityProfile.valueOf(res.getString(6)) : AudioQualityProfile.STANDARD
         );
     }
 
     @Override
     public <S extends MusicSetting> boolean create(@NotNull S entity) {
         return this.execute(
-                "INSERT INTO `music_setting` (channel_id, volume, `repeat`, show_np, restrict_channel) VALUES (?, ?, ?, ?, ?)",
+                "INSERT INTO `music_setting` (channel_id, volume, `repeat`, show_np, restrict_channel, quality) VALUES (?, ?, ?, ?, ?, ?)",
                 entity.getChannelId(),
                 entity.getVolume(),
                 entity.getRepeat(),
                 entity.isShowNp() ? 1 : 0,
-                entity.getRestrictChannel()
+                entity.getRestrictChannel(),
+                entity.getQuality()
         );
     }
 
@@ -124,11 +133,12 @@ class MariaMusicSettingRepository extends MusicSettingRepository {
     @Override
     public boolean update(@NotNull MusicSetting entity) {
         return this.execute(
-                "UPDATE `music_setting` SET volume = ?, `repeat` = ?, show_np = ?, restrict_channel = ? WHERE `channel_id` = ?",
+                "UPDATE `music_setting` SET volume = ?, `repeat` = ?, show_np = ?, restrict_channel = ?, quality = ? WHERE `channel_id` = ?",
                 entity.getVolume(),
                 entity.getRepeat(),
                 entity.isShowNp() ? 1 : 0,
                 entity.getRestrictChannel(),
+                entity.getQuality(),
                 entity.getChannelId()
         );
     }
@@ -0,0 +1,191 @@
+package http;
+
+import java.nio.ByteBuffer;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Holds the encoded Ogg pages of one channel in a ring buffer, written once by the sender
+ * and read by any number of listening connections, each at its own cursor.
+ * Pages are copied into buffers pooled by the broadcast, which go back to the pool once they have left the ring
+ * and every connection that was writing them has released them.
+ */
+class AudioBroadcast {
+    static final int CAPACITY = 64;
+    // free buffers kept beyond those in the ring, for the pages still held by connections
+    private static final int POOL_SIZE = CAPACITY;
+    private static final int MIN_BUFFER_SIZE = 4096;
+
+    /**
+     * Buffer of a published page, counting the ring and every connection holding it.
+     */
+    static final class PageBuffer {
+        private final ByteBuffer data;
+        private final AtomicInteger refs;
+
+        private PageBuffer(int capacity) {
+            this.data = ByteBuffer.allocate(capacity);
+            this.refs = new AtomicInteger();
+        }
+
+        /**
+         * @return A new view of the page.
+         */
+        ByteBuffer view() {
+            return this.data.duplicate();
+        }
+
+        private boolean retain() {
+            int n;
+            do {
+                n = this.refs.get();
+                // back in the pool, or about to be
+                if (n == 0) return false;
+            } while (!this.refs.compareAndSet(n, n + 1));
+            return true;
+        }
+    }
+
+    private record Page(long seq, PageBuffer buffer, int millis) {
+    }
+
+    private final AtomicReferenceArray<Page> pages;
+    private final ArrayBlockingQueue<PageBuffer> pool;
+    private final Set<StreamConnection> listeners;
+    // sequence number of the next page to be published
+    private volatile long head;
+    private volatile ByteBuffer headers;
+
+    AudioBroadcast() {
+        this.pages = new AtomicReferenceArray<>(CAPACITY);
+        this.pool = new ArrayBlockingQueue<>(POOL_SIZE);
+        this.listeners = new CopyOnWriteArraySet<>();
+    }
+
+    /**
+     * Sets the stream header pages replayed to every listener before the audio pages.
+     * @param headers Header pages. Must not be modified afterwards.
+     */
+    void setHeaders(ByteBuffer headers) {
+        this.headers = headers.asReadOnlyBuffer();
+        notifyListeners();
+    }
+
+    /**
+     * Publishes a page to all listeners. Called by the sender only.
+     * @param page Page, copied into a buffer of the pool. Its position is moved to its limit.
+     * @param millis Duration of the audio in the page.
+     */
+    void publish(ByteBuffer page, int millis) {
+        PageBuffer buffer = takeBuffer(page.remaining());
+        buffer.data.clear();
+        buffer.data.put(page).flip();
+        // held by the ring
+        buffer.refs.set(1);
+
+        long seq = this.head;
+        Page evicted = this.pages.getAndSet((int) (seq % CAPACITY), new Page(seq, buffer, millis));
+        this.head = seq + 1;
+        if (evicted != null) {
+            release(evicted.buffer());
+        }
+        notifyListeners();
+    }
+
+    private PageBuffer takeBuffer(int size) {
+        PageBuffer buffer = this.pool.poll();
+        if (buffer == null || buffer.data.capacity() < size) {
+            // a larger page than those so far, after the page size controller grew the pages
+            return new PageBuffer(Math.max(MIN_BUFFER_SIZE, Integer.highestOneBit(size - 1) << 1));
+        }
+        return buffer;
+    }
+
+    /**
+     * Releases a page taken with {@link #acquirePage(long)}.
+     * @param buffer Buffer of the page.
+     */
+    void release(PageBuffer buffer) {
+        if (buffer.refs.decrementAndGet() == 0) {
+            // dropped when the pool is full, after many connections fell behind at once
+            this.pool.offer(buffer);
+        }
+    }
+
+    private void notifyListeners() {
+        for (StreamConnection listener : this.listeners) {
+            listener.requestFlush();
+        }
+    }
+
+    ByteBuffer getHeaders() {
+        return this.headers;
+    }
+
+    long getHead() {
+        return this.head;
+    }
+
+    /**
+     * Oldest sequence number still held in the ring.
+     * @return Sequence number.
+     */
+    long getTail() {
+        return Math.max(0, this.head - CAPACITY);
+    }
+
+    /**
+     * Finds where a new listener should start reading, so that it receives about the given amount
+     * of recent audio right away instead of waiting for the next pages.
+     * @param millis Duration of the audio to replay.
+     * @return Sequence number of the first page to replay, {@link #getHead()} if none.
+     */
+    long getReplayStart(int millis) {
+        long head = this.head;
+        long tail = Math.max(0, head - CAPACITY);
+        long seq = head;
+        int replayed = 0;
+        while (replayed < millis && seq > tail) {
+            Page page = this.pages.get((int) ((seq - 1) % CAPACITY));
+            if (page == null || page.seq() != seq - 1) break;
+            replayed += page.millis();
+            seq--;
+        }
+        return seq;
+    }
+
+    /**
+     * Retrieves a page by its sequence number, and holds its buffer until {@link #release(PageBuffer)}.
+     * @param seq Sequence number, between {@link #getTail()} (inclusive) and {@link #getHead()} (exclusive).
+     * @return Buffer of the page, or null if it has been overwritten.
+     */
+    PageBuffer acquirePage(long seq) {
+        int index = (int) (seq % CAPACITY);
+        Page page = this.pages.get(index);
+        if (page == null || page.seq() != seq || !page.buffer().retain()) {
+            return null;
+        }
+        if (this.pages.get(index) != page) {
+            // overwritten in the meantime, the buffer may already hold another page
+            release(page.buffer());
+            return null;
+        }
+        return page.buffer();
+    }
+
+    void addListener(StreamConnection listener) {
+        this.listeners.add(listener);
+        listener.requestFlush();
+    }
+
+    void removeListener(StreamConnection listener) {
+        this.listeners.remove(listener);
+    }
+
+    Set<StreamConnection> getListeners() {
+        return this.listeners;
+    }
+}
@@ -0,0 +1,155 @@
+package http;
+
+import log.Logger;
+
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Drives every active audio sender on one shared 20 ms tick.
+ * A single ticker thread fans the ticks out to a small worker pool sized to the core count,
+ * instead of keeping one thread and one timer per voice channel.
+ */
+class AudioPacingEngine {
+    static final long INTERVAL_MILLIS = 20;
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(INTERVAL_MILLIS);
+
+    private final Logger logger;
+    private final ScheduledExecutorService ticker;
+    private final ExecutorService workers;
+    private final Map<UUID, Pacer> pacers;
+    private final long startNanos;
+    private long tickCount;
+
+    AudioPacingEngine(Logger logger) {
+        this.logger = logger;
+        this.pacers = new ConcurrentHashMap<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        this.workers = Executors.newFixedThreadPool(threads, daemonFactory("audio-pacing-worker"));
+        this.ticker = Executors.newSingleThreadScheduledExecutor(daemonFactory("audio-pacing-ticker"));
+        this.startNanos = System.nanoTime();
+        this.ticker.scheduleAtFixedRate(this::tick, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        this.logger.log("[Music server] Audio pacing engine started with " + threads + " worker(s)");
+    }
+
+    private static ThreadFactory daemonFactory(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, name + "-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    private final class Pacer implements Runnable {
+        private final UUID channelId;
+        private final StreamStats stats;
+        private volatile Runnable task;
+        // the task runs once every this many ticks
+        private volatile int everyTicks;
+        private volatile int countdown;
+        private volatile boolean running;
+        private long scheduledNanos;
+
+        private Pacer(UUID channelId, Runnable task, StreamStats stats, int everyTicks) {
+            this.channelId = channelId;
+            this.task = task;
+            this.stats = stats;
+            this.everyTicks = everyTicks;
+            this.countdown = 1;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (pacers.get(this.channelId) != this) {
+                // unregistered while waiting for a worker
+                this.running = false;
+                return;
+            }
+            this.stats.recordTickLag(System.nanoTime() - this.scheduledNanos);
+            try {
+                this.task.run();
+            } catch (RuntimeException e) {
+                logger.logException("[Music server] Audio sender tick failed for vc id " + this.channelId, e);
+            } finally {
+                this.running = false;
+            }
+        }
+    }
+
+    private void tick() {
+        // Measure lag against the ideal schedule, so that a delayed ticker also shows up as lag
+        long scheduled = this.startNanos + (++this.tickCount) * INTERVAL_NANOS;
+        for (Pacer pacer : this.pacers.values()) {
+            if (--pacer.countdown > 0) continue;
+            pacer.countdown = pacer.everyTicks;
+            if (pacer.running) {
+                // the previous tick has not finished yet
+                pacer.stats.recordSkippedTick();
+                continue;
+            }
+            pacer.running = true;
+            pacer.scheduledNanos = scheduled;
+            this.workers.execute(pacer);
+        }
+    }
+
+    /**
+     * Starts calling the task on every tick.
+     * @param channelId Voice channel ID.
+     * @param task Task to run every tick.
+     * @param stats Stats to record tick lag to.
+     */
+    void register(UUID channelId, Runnable task, StreamStats stats) {
+        register(channelId, task, stats, 1);
+    }
+
+    /**
+     * Starts calling the task once every given number of ticks.
+     * @param channelId Voice channel ID.
+     * @param task Task to run.
+     * @param stats Stats to record tick lag to.
+     * @param everyTicks Number of ticks between each run.
+     */
+    void register(UUID channelId, Runnable task, StreamStats stats, int everyTicks) {
+        this.pacers.put(channelId, new Pacer(channelId, task, stats, everyTicks));
+    }
+
+    /**
+     * Replaces the task of a registered channel, starting from the next tick.
+     * The new task never runs concurrently with the previous one.
+     * @param channelId Voice channel ID.
+     * @param task Task to run.
+     * @param everyTicks Number of ticks between each run.
+     */
+    void reschedule(UUID channelId, Runnable task, int everyTicks) {
+        Pacer pacer = this.pacers.get(channelId);
+        if (pacer == null) return;
+        pacer.task = task;
+        pacer.everyTicks = everyTicks;
+        pacer.countdown = 1;
+    }
+
+    /**
+     * Stops calling the task of the channel, waiting for the currently running tick if any.
+     * @param channelId Voice channel ID.
+     */
+    void unregister(UUID channelId) {
+        Pacer pacer = this.pacers.remove(channelId);
+        if (pacer == null) return;
+        // wait for the tick in progress, if any
+        synchronized (pacer) {
+            pacer.running = false;
+        }
+    }
+
+    /**
+     * Number of channels currently driven by this engine.
+     * @return Channel count.
+     */
+    int activeChannels() {
+        return this.pacers.size();
+    }
+}
@@ -0,0 +1,224 @@
+package http;
+
+import log.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Selector based HTTP server streaming audio on "/serve/{vcId}".
+ * One thread serves all connections; writes are queued per connection and written with gathering writes,
+ * so that a stalled client can never block the threads producing the audio.
+ */
+class AudioStreamServer {
+    interface StreamHandler {
+        /**
+         * Called on the selector thread to check if the stream of a channel can be served.
+         * @param channelId Voice channel ID.
+         * @return {@code true} if the stream was found.
+         */
+        boolean canServe(UUID channelId);
+
+        /**
+         * Called on the selector thread after the response headers have been enqueued.
+         * @param channelId Voice channel ID.
+         * @param connection Connection.
+         * @return {@code true} if the connection was accepted.
+         */
+        boolean onConnect(UUID channelId, StreamConnection connection);
+
+        /**
+         * Called on the selector thread when an accepted connection has closed.
+         * @param channelId Voice channel ID.
+         * @param connection Connection.
+         */
+        void onDisconnect(UUID channelId, StreamConnection connection);
+    }
+
+    private static final Pattern requestLine = Pattern.compile(
+            "(GET|HEAD) /serve/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})(\\?\\S*)? HTTP/1\\.[01]");
+
+    private static final String STREAM_HEADERS = String.join("\r\n",
+            "HTTP/1.1 200 OK",
+            "Cache-Control: no-cache, no-store",
+            "Content-Type: audio/ogg;codecs=opus",
+            "Access-Control-Allow-Origin: *",
+            "Connection: close",
+            "", "");
+
+    private final Logger logger;
+    private final StreamHandler handler;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Queue<StreamConnection> writeRequests;
+
+    AudioStreamServer(int port, Logger logger, StreamHandler handler) throws IOException {
+        this.logger = logger;
+        this.handler = handler;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.bind(new InetSocketAddress(port));
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+        this.writeRequests = new ConcurrentLinkedQueue<>();
+
+        Thread thread = new Thread(this::loop, "audio-stream-server");
+        thread.setDaemon(true);
+        thread.start();
+        this.logger.log("Audio stream server started on port " + port + "...");
+    }
+
+    /**
+     * Asks the selector thread to flush the connection. Can be called from any thread.
+     * @param connection Connection.
+     */
+    void requestWrite(StreamConnection connection) {
+        this.writeRequests.add(connection);
+        this.selector.wakeup();
+    }
+
+    private void loop() {
+        while (this.selector.isOpen()) {
+            try {
+                this.selector.select();
+                StreamConnection requested;
+                while ((requested = this.writeRequests.poll()) != null) {
+                    flush(requested);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    StreamConnection connection = (StreamConnection) key.attachment();
+                    if (key.isReadable()) {
+                        read(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        flush(connection);
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                this.logger.logException("[Music server] Audio stream server loop error", e);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null) return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+        key.attach(new StreamConnection(this, this.logger, channel, key));
+    }
+
+    private static void flush(StreamConnection connection) {
+        try {
+            connection.flush();
+        } catch (IOException e) {
+            connection.close();
+        }
+    }
+
+    private void read(StreamConnection connection) {
+        ByteBuffer buf = connection.getRequestBuffer();
+        int read;
+        try {
+            read = connection.getChannel().read(buf);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            // client went away
+            connection.close();
+            return;
+        }
+        if (connection.getChannelId() != null) {
+            // request already handled, discard anything else the client sends
+            buf.clear();
+            return;
+        }
+
+        String received = new String(buf.array(), 0, buf.position(), StandardCharsets.ISO_8859_1);
+        int end = received.indexOf("\r\n\r\n");
+        if (end < 0) {
+            if (!buf.hasRemaining()) {
+                respondAndClose(connection, 431, "request header too large");
+            }
+            return;
+        }
+        buf.clear();
+        handleRequest(connection, received.substring(0, received.indexOf("\r\n")));
+    }
+
+    private void handleRequest(StreamConnection connection, String line) {
+        Matcher m = requestLine.matcher(line);
+        if (!m.matches()) {
+            respondAndClose(connection, 400, "bad path");
+            return;
+        }
+
+        UUID vcId = UUID.fromString(m.group(2));
+        if (!this.handler.canServe(vcId)) {
+            this.logger.log("[Music server] Cannot find player for channel id " + vcId);
+            respondAndClose(connection, 400, "no waiting players for channel id " + vcId + " found");
+            return;
+        }
+        if ("HEAD".equals(m.group(1))) {
+            connection.send(ascii(STREAM_HEADERS));
+            connection.closeGracefully();
+            return;
+        }
+
+        connection.setChannelId(vcId);
+        connection.send(ascii(STREAM_HEADERS));
+        if (!this.handler.onConnect(vcId, connection)) {
+            connection.closeGracefully();
+            return;
+        }
+        this.logger.log("[Music server] Connection established to vc id " + vcId);
+    }
+
+    private static ByteBuffer ascii(String s) {
+        return ByteBuffer.wrap(s.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static void respondAndClose(StreamConnection connection, int code, String body) {
+        byte[] content = body.getBytes(StandardCharsets.UTF_8);
+        String header = String.join("\r\n",
+                "HTTP/1.1 " + code + " " + (code == 400 ? "Bad Request" : "Error"),
+                "Content-Type: text/plain; charset=utf-8",
+                "Content-Length: " + content.length,
+                "Connection: close",
+                "", "");
+        connection.send(ascii(header));
+        connection.send(ByteBuffer.wrap(content));
+        connection.closeGracefully();
+    }
+
+    void onSlowConsumer(StreamConnection connection, String action) {
+        this.logger.log(String.format("[Music server] Slow listener %s on vc id %s: %s",
+                connection.getRemoteAddress(), connection.getChannelId(), action));
+    }
+
+    void onClosed(StreamConnection connection) {
+        UUID vcId = connection.getChannelId();
+        if (vcId != null) {
+            this.handler.onDisconnect(vcId, connection);
+        }
+    }
+}
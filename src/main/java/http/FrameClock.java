@@ -0,0 +1,93 @@
+package http;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks the audio written to a stream against the wall clock.
+ * A stream may run ahead of real time by the burst length, and falls behind when ticks are delayed;
+ * the missed frames are then written on the following ticks, instead of being lost as drift.
+ * Audio is counted in milliseconds, so that frames of any duration can be mixed.
+ */
+class FrameClock {
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioPacingEngine.INTERVAL_MILLIS);
+    // audio behind real time that is still caught up on, anything older is given up
+    private static final long MAX_LAG_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final long leadMillis;
+    private boolean started;
+    private long startNanos;
+    private long writtenMillis;
+
+    FrameClock(int burstMillis) {
+        this.leadMillis = burstMillis;
+    }
+
+    boolean isStarted() {
+        return this.started;
+    }
+
+    /**
+     * Starts the clock at the first frame of the stream.
+     * @param now Current {@link System#nanoTime()}.
+     */
+    void start(long now) {
+        this.started = true;
+        this.startNanos = now;
+        this.writtenMillis = 0;
+    }
+
+    /**
+     * Stops the clock, so that the next frame starts the stream over with a new burst.
+     */
+    void reset() {
+        this.started = false;
+    }
+
+    // audio that should have been written by now in real time, including the current tick
+    private long realTimeMillis(long now) {
+        long due = ((now - this.startNanos) / TICK_NANOS + 1) * AudioPacingEngine.INTERVAL_MILLIS;
+        if (due - this.writtenMillis > MAX_LAG_MILLIS) {
+            // stalled for too long, move the clock forward instead of rushing out stale audio
+            long skipped = due - this.writtenMillis - MAX_LAG_MILLIS;
+            this.startNanos += TimeUnit.MILLISECONDS.toNanos(skipped);
+            due -= skipped;
+        }
+        return due;
+    }
+
+    /**
+     * Checks if another frame may be written now without exceeding the allowed lead.
+     * @param now Current {@link System#nanoTime()}.
+     * @return {@code true} if a frame can be written.
+     */
+    boolean canWrite(long now) {
+        return this.writtenMillis < realTimeMillis(now) + this.leadMillis;
+    }
+
+    /**
+     * Checks if the stream is behind real time, i.e. the client is about to run out of audio.
+     * @param now Current {@link System#nanoTime()}.
+     * @return {@code true} if behind.
+     */
+    boolean isBehind(long now) {
+        return isBehind(now, 0);
+    }
+
+    /**
+     * Checks if the stream will be behind real time after the given time has passed.
+     * @param now Current {@link System#nanoTime()}.
+     * @param aheadMillis Time from now.
+     * @return {@code true} if behind.
+     */
+    boolean isBehind(long now, long aheadMillis) {
+        return this.writtenMillis < realTimeMillis(now) + aheadMillis;
+    }
+
+    /**
+     * Records that a frame has been written.
+     * @param millis Duration of the frame.
+     */
+    void advance(int millis) {
+        this.writtenMillis += millis;
+    }
+}
@@ -1,6 +1,7 @@
 package http;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import music.GaplessAudioPlayer;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.UUID;
 
@@ -10,8 +11,25 @@ public interface MusicServer {
      * @param peerId Peer ID for skyway
      * @param player Audio player
      * @param channelId Voice channel ID.
+     * @param volume Initial volume in percent.
      * @return The URL the browser should next connect to.
      */
-    String serve(String peerId, AudioPlayer player, UUID channelId);
+    String serve(String peerId, GaplessAudioPlayer player, UUID channelId, int volume);
     void stop(UUID channelId);
+
+    /**
+     * Changes the volume of the channel.
+     * In passthrough mode the volume is applied by the browser, so that the player never has to re-encode the frames.
+     * @param channelId Voice channel ID.
+     * @param volume Volume in percent.
+     */
+    void setVolume(UUID channelId, int volume);
+
+    /**
+     * Retrieves streaming statistics of the channel.
+     * @param channelId Voice channel ID.
+     * @return Stats. null if the channel is not streaming.
+     */
+    @Nullable
+    StreamStats getStats(UUID channelId);
 }
@@ -1,75 +1,313 @@
 package http;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import music.GaplessAudioPlayer;
 import music.MusicServerAudioProvider;
 
-import java.io.IOException;
-import java.io.OutputStream;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
+import java.nio.ByteBuffer;
+import java.util.UUID;
 import java.util.concurrent.TimeUnit;
 
+/**
+ * Encodes the audio of one channel once, and publishes the pages to all of its listeners.
+ */
 class MusicServerAudioSender {
-    private final static long interval = 20;
+    // upper bound of frames written in one tick, when bursting or catching up
+    private static final int MAX_FRAMES_PER_TICK = 50;
+    private static final int SILENCE_MILLIS = 20;
+    // while parked, wake up this often to keep the stream alive with silence
+    private static final int KEEP_ALIVE_MILLIS = 500;
+    private static final int KEEP_ALIVE_TICKS = (int) (KEEP_ALIVE_MILLIS / AudioPacingEngine.INTERVAL_MILLIS);
+    // a track starting within this time after the end of another counts as a track switch
+    private static final long TRACK_SWITCH_NANOS = TimeUnit.SECONDS.toNanos(1);
 
+    private final UUID channelId;
+    private final AudioPacingEngine engine;
+    private final GaplessAudioPlayer player;
     private final MusicServerAudioProvider provider;
-    private final OutputStream out;
-    private final ScheduledExecutorService executor;
+    private final PageSizeController pageSize;
+    private final FrameClock clock;
+    private final AudioBroadcast broadcast;
+    private final StreamStats stats;
+    private final AudioEventAdapter playerListener;
+    private final long createdNanos;
+    // guarded by this, player events may call park() and unpark() from any thread
+    private boolean pacing;
+    private boolean parked;
+    // only touched on the pacing thread, so that the provider is never changed under a running tick
+    private boolean keptAlive;
     private boolean headersSent;
-    private final ScheduledFuture<?> canceller;
     private int nonProvideCount;
-    private static final int INTERNAL_BUFFER_PACKETS = 10;
+    // duration of the audio buffered in the page being filled
+    private int pageMillis;
+    // track of the last provided frame
+    private AudioTrack lastTrack;
+    // time the current track started, until its first frame is written
+    private volatile long trackStartNanos;
+    // time the last track ended, until the first frame of the next track is written
+    private volatile long trackEndNanos;
 
-    MusicServerAudioSender(AudioPlayer player, OutputStream out) {
-        this.provider = new MusicServerAudioProvider(player, 10);
-        this.out = out;
-        this.executor = Executors.newSingleThreadScheduledExecutor();
-        this.canceller = this.executor.scheduleAtFixedRate(this::provide, interval, interval, TimeUnit.MILLISECONDS);
+    MusicServerAudioSender(UUID channelId, AudioPacingEngine engine, GaplessAudioPlayer player) {
+        this.channelId = channelId;
+        this.engine = engine;
+        this.player = player;
+        this.pageSize = new PageSizeController();
+        this.provider = new MusicServerAudioProvider(player, this.pageSize.getPackets());
+        this.clock = new FrameClock(StreamConfig.BURST_MILLIS);
+        this.broadcast = new AudioBroadcast();
+        this.stats = new StreamStats();
+        this.stats.recordBufferPackets(this.pageSize.getPackets());
         this.nonProvideCount = 0;
+        this.createdNanos = System.nanoTime();
+        this.parked = player.getPlayingTrack() == null || player.isPaused();
+        this.playerListener = new AudioEventAdapter() {
+            @Override
+            public void onTrackStart(AudioPlayer player, AudioTrack track) {
+                trackStartNanos = System.nanoTime();
+                if (trackStartNanos - trackEndNanos > TRACK_SWITCH_NANOS) {
+                    // started after the queue had ended, not a switch from one track to the next
+                    trackEndNanos = 0;
+                }
+                recordTranscoding();
+                unpark();
+            }
+
+            @Override
+            public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason) {
+                trackEndNanos = System.nanoTime();
+                // the scheduler has already started the next track here, if any
+                if (player.getPlayingTrack() == null) {
+                    park();
+                }
+            }
+
+            @Override
+            public void onPlayerPause(AudioPlayer player) {
+                park();
+            }
+
+            @Override
+            public void onPlayerResume(AudioPlayer player) {
+                if (player.getPlayingTrack() != null) {
+                    unpark();
+                }
+            }
+        };
+        this.player.addListener(this.playerListener);
+        this.stats.recordParked(this.parked);
+    }
+
+    /**
+     * Records whether the player re-encodes the playing track, which depends on the source as well as the volume.
+     */
+    void recordTranscoding() {
+        this.stats.recordTranscoding(this.player.isTranscoding());
+    }
+
+    GaplessAudioPlayer getPlayer() {
+        return this.player;
+    }
+
+    StreamStats getStats() {
+        return this.stats;
     }
 
+    /**
+     * Adds a listener to this channel.
+     * Starts pulling audio from the player on the first listener, so that the beginning of the track is not lost.
+     * @param connection Connection.
+     */
+    synchronized void addListener(StreamConnection connection) {
+        connection.subscribe(this.broadcast, this.stats);
+        if (!this.pacing) {
+            this.pacing = true;
+            if (this.parked) {
+                this.engine.register(this.channelId, this::keepAlive, this.stats, KEEP_ALIVE_TICKS);
+            } else {
+                this.engine.register(this.channelId, this::provide, this.stats);
+            }
+        }
+    }
+
+    /**
+     * Stops pulling from the player while it is paused or has nothing to play,
+     * and only wakes up now and then to keep the stream alive.
+     */
+    private synchronized void park() {
+        if (this.parked) return;
+        this.parked = true;
+        this.stats.recordParked(true);
+        if (this.pacing) {
+            this.engine.reschedule(this.channelId, this::keepAlive, KEEP_ALIVE_TICKS);
+        }
+    }
+
+    /**
+     * Resumes pulling from the player on every tick.
+     */
+    private synchronized void unpark() {
+        if (!this.parked) return;
+        this.parked = false;
+        this.stats.recordParked(false);
+        if (this.pacing) {
+            this.engine.reschedule(this.channelId, this::provide, 1);
+        }
+    }
+
+    int listenerCount() {
+        return this.broadcast.getListeners().size();
+    }
+
+    /**
+     * Called on every tick. Writes as many frames as the clock allows: one per tick in the steady state,
+     * more when bursting at the start of the stream or catching up after a stall.
+     */
     private void provide() {
-        try {
+        if (this.keptAlive) {
+            // back from keepAlive(), which fills pages of any size
+            this.keptAlive = false;
+            applyPageSize();
+        }
+        long now = System.nanoTime();
+        if (!this.clock.isStarted()) {
+            // the clock starts with the first frame
+            if (!provider.canProvide()) return;
+            this.clock.start(now);
+            writeFrame(now);
+        }
+        for (int i = 0; i < MAX_FRAMES_PER_TICK && this.clock.canWrite(now); i++) {
             if (!provider.canProvide()) {
-                this.nonProvideCount++;
-                if (headersSent && this.nonProvideCount >= INTERNAL_BUFFER_PACKETS) {
-                    this.nonProvideCount = 0;
-
-                    // flush if there are remaining buffered packets
-                    if (provider.internalBufferedPackets() == 0) return;
-                    out.write(provider.flush());
-                }
+                onMissingFrame(now);
                 return;
             }
-            if (!headersSent) {
-                byte[] h0 = provider.headerPageZero();
-                out.write(h0);
-                byte[] h1 = provider.headerPageOne();
-                out.write(h1);
-                headersSent = true;
+            writeFrame(now);
+        }
+    }
+
+    /**
+     * Called every {@link #KEEP_ALIVE_MILLIS} while parked.
+     * Writes enough silence to last until the next call, in as few pages as possible.
+     */
+    private void keepAlive() {
+        if (!headersSent || !this.clock.isStarted()) return;
+        if (!StreamConfig.CONTINUOUS) {
+            // end the stream as before, and start over with a burst when audio comes back
+            this.clock.reset();
+            if (provider.internalBufferedPackets() == 0) return;
+            this.broadcast.publish(provider.flush(), this.pageMillis);
+            this.pageMillis = 0;
+            return;
+        }
+
+        long now = System.nanoTime();
+        this.keptAlive = true;
+        this.provider.setInternalBufferPackets(Integer.MAX_VALUE);
+        for (int i = 0; i < MAX_FRAMES_PER_TICK && this.clock.isBehind(now, KEEP_ALIVE_MILLIS); i++) {
+            this.stats.recordSilenceFrame();
+            publishPage(provider.provide20MsSilence(), SILENCE_MILLIS);
+            this.clock.advance(SILENCE_MILLIS);
+        }
+        publishPage(provider.flushPage(), 0);
+        // publishPage() only restores the page size when a page was written, which is not the case
+        // while the clock is still ahead right after a pause
+        applyPageSize();
+    }
+
+    private void writeFrame(long now) {
+        this.nonProvideCount = 0;
+        this.lastTrack = this.player.getPlayingTrack();
+        if (!headersSent) {
+            this.broadcast.setHeaders(provider.headerPages());
+            headersSent = true;
+            this.stats.recordStreamStartLatency(now - this.createdNanos);
+        }
+        long trackStart = this.trackStartNanos;
+        if (trackStart != 0) {
+            this.trackStartNanos = 0;
+            this.stats.recordTrackStartLatency(now - trackStart);
+            long trackEnd = this.trackEndNanos;
+            if (trackEnd != 0) {
+                this.trackEndNanos = 0;
+                this.stats.recordTrackGap(now - trackEnd);
+            }
+        }
+        int millis = provider.frameMillis();
+        if (this.stats.getFrameMillis() != millis) {
+            this.stats.recordFrameMillis(millis);
+        }
+        publishPage(provider.provideAudio(), millis);
+        this.clock.advance(millis);
+    }
+
+    private void onMissingFrame(long now) {
+        if (!this.clock.isBehind(now)) {
+            // still ahead of the client thanks to the burst, the frame may arrive in time
+            return;
+        }
+
+        boolean playing = isPlayingLastTrack();
+        if (playing && this.nonProvideCount == 0) {
+            // the player is playing but the frame was late
+            this.pageSize.onUnderrun();
+            this.stats.recordUnderrun();
+            applyPageSize();
+        }
+        this.nonProvideCount++;
+
+        if (StreamConfig.CONTINUOUS) {
+            // keep the stream going through pauses and track changes, so that the client never sees its end
+            for (int i = 0; i < MAX_FRAMES_PER_TICK && this.clock.isBehind(now); i++) {
+                this.stats.recordSilenceFrame();
+                publishPage(provider.provide20MsSilence(), SILENCE_MILLIS);
+                this.clock.advance(SILENCE_MILLIS);
             }
-            byte[] p = provider.provide20MsAudio();
-            if (p.length == 0) return;
-            out.write(p);
-        } catch (IOException e) {
-            e.printStackTrace();
-            canceller.cancel(false);
+            return;
+        }
+
+        // flush soon after pause or stop, but give late frames a chance while playing
+        int flushAfter = playing ? this.pageSize.getStallTicks() : this.pageSize.getPackets();
+        if (this.nonProvideCount >= flushAfter) {
+            this.nonProvideCount = 0;
+            // the stream has ended for the client, start over with a burst when audio comes back
+            this.clock.reset();
+
+            // flush if there are remaining buffered packets
+            if (provider.internalBufferedPackets() == 0) return;
+            this.broadcast.publish(provider.flush(), this.pageMillis);
+            this.pageMillis = 0;
         }
     }
 
+    private void publishPage(ByteBuffer p, int millis) {
+        this.pageMillis += millis;
+        if (!p.hasRemaining()) return;
+        this.broadcast.publish(p, this.pageMillis);
+        this.pageMillis = 0;
+        this.pageSize.onPage();
+        applyPageSize();
+    }
+
+    private boolean isPlayingLastTrack() {
+        return this.lastTrack != null && !this.player.isPaused() && this.player.getPlayingTrack() == this.lastTrack;
+    }
+
+    private void applyPageSize() {
+        this.provider.setInternalBufferPackets(this.pageSize.getPackets());
+        this.stats.recordBufferPackets(this.pageSize.getPackets());
+    }
+
     public void shutdown() {
-        executor.shutdown();
-        try {
-            executor.awaitTermination(3, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-        try {
-            out.flush();
-            out.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+        synchronized (this) {
+            this.pacing = false;
+            this.player.removeListener(this.playerListener);
+        }
+        // not under the lock, as the tick it waits for may be calling park() or unpark()
+        engine.unregister(channelId);
+        for (StreamConnection listener : this.broadcast.getListeners()) {
+            listener.closeGracefully();
         }
     }
 }
@@ -1,55 +1,67 @@
 package http;
 
 import api.TraqApi;
+import api.WebRTCStateSnapshot;
 import app.App;
 import com.github.motoki317.traq4j.model.WebRTCAuthenticateResult;
 import com.github.motoki317.traq4j.model.WebRTCUserState;
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpServer;
 import log.Logger;
+import music.GaplessAudioPlayer;
 import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONObject;
+import skyway.BrowserEvent;
+import skyway.SkywayApi;
 
 import java.io.*;
 import java.net.InetSocketAddress;
-import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
-public class MusicServerImpl implements MusicServer {
-    private final Pattern servePath;
+public class MusicServerImpl implements MusicServer, AudioStreamServer.StreamHandler {
     private final Pattern skywayPath;
+    private final Pattern eventsPath;
     private final Logger logger;
     private final TraqApi traqApi;
+    private final SkywayApi skywayApi;
     private final int port;
+    private final int streamPort;
     private final String botUserId;
 
-    // audio players waiting for a http connection
-    private final Map<UUID, AudioPlayer> waitingPlayers;
+    // read without locking by the stream server selector thread; serve(), setVolume() and stop() synchronize on this
     private final Map<UUID, MusicServerAudioSender> activeSenders;
+    // volume in percent of each channel, applied by the browser in passthrough mode
+    private final Map<UUID, Integer> volumes;
+    private final AudioPacingEngine pacingEngine;
 
-    public MusicServerImpl(int port, App app) throws IOException {
-        this.servePath = Pattern.compile("/serve/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
+    public MusicServerImpl(int port, int streamPort, App app) throws IOException {
         this.skywayPath = Pattern.compile("/skyway/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
+        this.eventsPath = Pattern.compile("/events/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
         this.logger = app.getLogger();
         this.traqApi = app.getTraqApi();
+        this.skywayApi = app.getSkywayApi();
         this.port = port;
+        this.streamPort = streamPort;
         this.botUserId = System.getenv("BOT_USER_ID");
-        this.waitingPlayers = new HashMap<>();
-        this.activeSenders = new HashMap<>();
+        this.activeSenders = new ConcurrentHashMap<>();
+        this.volumes = new ConcurrentHashMap<>();
+        this.pacingEngine = new AudioPacingEngine(this.logger);
 
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
         server.createContext("/", this::top);
-        server.createContext("/serve/", this::serveMusic);
         server.createContext("/skyway/", this::serveSkyway);
         server.createContext("/authenticate", this::authenticate);
+        server.createContext("/events/", this::browserEvent);
         server.start();
         this.logger.log("Music server started on port " + port + "...");
+
+        new AudioStreamServer(streamPort, this.logger, this);
     }
 
     private static void status(HttpExchange exchange, int code) throws IOException {
@@ -73,45 +85,29 @@ public class MusicServerImpl implements MusicServer {
         flushAndClose(exchange);
     }
 
-    public synchronized void serveMusic(HttpExchange exchange) throws IOException {
-        String path = exchange.getRequestURI().getPath();
-        Matcher m = this.servePath.matcher(path);
-        if (!m.matches()) {
-            status(exchange, 400);
-            respond(exchange, "bad path");
-            flushAndClose(exchange);
-            return;
-        }
-
-        UUID vcId = UUID.fromString(m.group(1));
-        AudioPlayer player = this.waitingPlayers.getOrDefault(vcId, null);
-        if (player == null) {
-            this.logger.log("[Music server] Cannot find player for channel id " + vcId);
-            status(exchange, 400);
-            respond(exchange, "no waiting players for channel id " + vcId + " found");
-            flushAndClose(exchange);
-            return;
-        }
-
-        Headers headers = exchange.getResponseHeaders();
-        headers.add("Cache-Control", "no-cache, no-store");
-        headers.add("Content-Type", "audio/ogg;codecs=opus");
-        headers.add("Connection", "close");
+    @Override
+    public boolean canServe(UUID channelId) {
+        return this.activeSenders.containsKey(channelId);
+    }
 
-        status(exchange, 200);
-        if ("HEAD".equalsIgnoreCase(exchange.getRequestMethod())) {
-            flushAndClose(exchange);
-            return;
+    @Override
+    public boolean onConnect(UUID channelId, StreamConnection connection) {
+        MusicServerAudioSender sender = this.activeSenders.getOrDefault(channelId, null);
+        if (sender == null) {
+            return false;
         }
+        sender.addListener(connection);
+        return true;
+    }
 
-        OutputStream out = exchange.getResponseBody();
-
-        this.waitingPlayers.remove(vcId);
-        this.activeSenders.put(vcId, new MusicServerAudioSender(player, out));
-        this.logger.log("[Music server] Connection established to vc id " + vcId);
+    @Override
+    public void onDisconnect(UUID channelId, StreamConnection connection) {
+        MusicServerAudioSender sender = this.activeSenders.getOrDefault(channelId, null);
+        this.logger.log(String.format("[Music server] Connection closed for vc id %s (%s listener(s) left)",
+                channelId, sender != null ? sender.listenerCount() : 0));
     }
 
-    private synchronized void serveSkyway(HttpExchange exchange) throws IOException {
+    private void serveSkyway(HttpExchange exchange) throws IOException {
         String path = exchange.getRequestURI().getPath();
         Matcher m = this.skywayPath.matcher(path);
         if (!m.matches()) {
@@ -122,8 +118,8 @@ public class MusicServerImpl implements MusicServer {
         }
 
         UUID vcId = UUID.fromString(m.group(1));
-        List<WebRTCUserState> states = this.traqApi.getWebRTCState();
-        if (states == null) {
+        WebRTCStateSnapshot snapshot = this.traqApi.getWebRTCStateSnapshot();
+        if (snapshot == null) {
             status(exchange, 500);
             respond(exchange, "failed to get WebRTC states");
             flushAndClose(exchange);
@@ -131,8 +127,7 @@ public class MusicServerImpl implements MusicServer {
         }
 
         String roomName = null;
-        for (WebRTCUserState state : states) {
-            if (!state.getChannelId().equals(vcId)) continue;
+        for (WebRTCUserState state : snapshot.getChannelStates(vcId)) {
             if (state.getSessions().size() == 0) continue;
             roomName = state.getSessions().get(0).getSessionId();
             break;
@@ -147,7 +142,8 @@ public class MusicServerImpl implements MusicServer {
         Headers headers = exchange.getResponseHeaders();
         headers.add("Content-Type", "text/html");
         status(exchange, 200);
-        respond(exchange, SkywayClient.getHtml(vcId, roomName, botUserId, port));
+        int volume = this.volumes.getOrDefault(vcId, 100);
+        respond(exchange, SkywayClient.getHtml(vcId, roomName, botUserId, port, streamPort, volume));
         flushAndClose(exchange);
 
         this.logger.log("[Music server] Skyway: Connecting to room " + roomName + "...");
@@ -182,22 +178,86 @@ public class MusicServerImpl implements MusicServer {
         flushAndClose(exchange);
     }
 
+    /**
+     * Receives a lifecycle event reported by the client page, e.g. {@code {"event": "connected"}}.
+     */
+    private void browserEvent(HttpExchange exchange) throws IOException {
+        Matcher m = this.eventsPath.matcher(exchange.getRequestURI().getPath());
+        if (!m.matches()) {
+            status(exchange, 400);
+            respond(exchange, "bad path");
+            flushAndClose(exchange);
+            return;
+        }
+
+        StringWriter writer = new StringWriter();
+        IOUtils.copy(exchange.getRequestBody(), writer, "UTF-8");
+        BrowserEvent event = BrowserEvent.fromName(new JSONObject(writer.toString()).optString("event"));
+        if (event == null) {
+            status(exchange, 400);
+            respond(exchange, "unknown event");
+            flushAndClose(exchange);
+            return;
+        }
+
+        status(exchange, 200);
+        flushAndClose(exchange);
+        this.skywayApi.onBrowserEvent(UUID.fromString(m.group(1)), event);
+    }
+
     @Override
-    public synchronized String serve(String peerId, AudioPlayer player, UUID channelId) {
-        this.waitingPlayers.put(channelId, player);
+    public synchronized String serve(String peerId, GaplessAudioPlayer player, UUID channelId, int volume) {
+        MusicServerAudioSender previous = this.activeSenders.remove(channelId);
+        if (previous != null) {
+            // rejoined before the previous stream was stopped, whose listeners belong to the old browser page.
+            // shut it down first, as it unregisters the channel from the pacing engine
+            this.logger.log("[Music server] Replacing existing sender for vc id " + channelId);
+            previous.shutdown();
+        }
+        MusicServerAudioSender sender = new MusicServerAudioSender(channelId, this.pacingEngine, player);
+        this.activeSenders.put(channelId, sender);
+        applyVolume(channelId, sender, volume);
         this.logger.log("[Music server] Waiting access to vc id " + channelId.toString() + "...");
 
         // connect to this next
         return "http://localhost:" + port + "/skyway/" + channelId;
     }
 
+    @Override
+    public void setVolume(UUID channelId, int volume) {
+        synchronized (this) {
+            MusicServerAudioSender sender = this.activeSenders.getOrDefault(channelId, null);
+            if (sender == null) return;
+            applyVolume(channelId, sender, volume);
+        }
+        // outside the lock, as the browser may take a while to respond
+        if (StreamConfig.PASSTHROUGH) {
+            this.skywayApi.setVolume(channelId, volume);
+        }
+    }
+
+    private void applyVolume(UUID channelId, MusicServerAudioSender sender, int volume) {
+        sender.getPlayer().setVolume(StreamConfig.PASSTHROUGH ? 100 : volume);
+        sender.getStats().recordVolume(volume);
+        sender.recordTranscoding();
+        this.volumes.put(channelId, volume);
+    }
+
     @Override
     public synchronized void stop(UUID channelId) {
-        MusicServerAudioSender sender = this.activeSenders.getOrDefault(channelId, null);
+        this.volumes.remove(channelId);
+        MusicServerAudioSender sender = this.activeSenders.remove(channelId);
         if (sender == null) {
             this.logger.log("[Music server] Warning: tried to stop non-existing sender: " + channelId.toString());
             return;
         }
         sender.shutdown();
     }
+
+    @Nullable
+    @Override
+    public StreamStats getStats(UUID channelId) {
+        MusicServerAudioSender sender = this.activeSenders.getOrDefault(channelId, null);
+        return sender != null ? sender.getStats() : null;
+    }
 }
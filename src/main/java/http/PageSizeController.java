@@ -0,0 +1,62 @@
+package http;
+
+/**
+ * Decides how many 20 ms Opus packets are buffered into one Ogg page.
+ * In adaptive mode, pages start small to keep control latency (pause, skip) low,
+ * grow quickly when frames from the player arrive late, and slowly shrink back once delivery is stable.
+ * See {@link StreamConfig} for the settings.
+ */
+class PageSizeController {
+    private static final int FIXED_PACKETS = 10;
+    // pages in a row without underruns before shrinking by one packet
+    private static final int STABLE_PAGES_TO_SHRINK = 50;
+
+    private static final boolean ADAPTIVE = StreamConfig.BUFFER_ADAPTIVE;
+    private static final int MIN_PACKETS = Math.max(1, StreamConfig.BUFFER_MIN_PACKETS);
+    private static final int MAX_PACKETS = Math.max(MIN_PACKETS, StreamConfig.BUFFER_MAX_PACKETS);
+
+    private int packets;
+    private int stablePages;
+
+    PageSizeController() {
+        this.packets = ADAPTIVE ? MIN_PACKETS : FIXED_PACKETS;
+    }
+
+    /**
+     * Current number of packets per page.
+     * @return Packets.
+     */
+    int getPackets() {
+        return this.packets;
+    }
+
+    /**
+     * Number of ticks without frames after which a stalled stream is flushed.
+     * @return Ticks.
+     */
+    int getStallTicks() {
+        return ADAPTIVE ? MAX_PACKETS : FIXED_PACKETS;
+    }
+
+    /**
+     * Called when the player was playing but had no frame ready in time.
+     */
+    void onUnderrun() {
+        this.stablePages = 0;
+        if (ADAPTIVE) {
+            this.packets = Math.min(MAX_PACKETS, this.packets * 2);
+        }
+    }
+
+    /**
+     * Called when a full page has been written.
+     */
+    void onPage() {
+        if (!ADAPTIVE) return;
+        this.stablePages++;
+        if (this.stablePages >= STABLE_PAGES_TO_SHRINK && this.packets > MIN_PACKETS) {
+            this.packets--;
+            this.stablePages = 0;
+        }
+    }
+}
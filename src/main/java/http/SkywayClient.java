@@ -26,13 +26,14 @@ public class SkywayClient {
         fileContent = new String(data, StandardCharsets.UTF_8);
     }
 
-    static String getHtml(UUID vcId, String roomName, String peerId, int port) {
+    static String getHtml(UUID vcId, String roomName, String peerId, int port, int streamPort, int volume) {
         return String.format(fileContent,
                 peerId,
                 apiKey,
                 roomName,
-                port,
+                streamPort,
                 vcId.toString(),
+                volume,
                 port
         );
     }
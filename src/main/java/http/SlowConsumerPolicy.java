@@ -0,0 +1,26 @@
+package http;
+
+/**
+ * What to do with a listener that reads its stream slower than the audio is produced.
+ */
+enum SlowConsumerPolicy {
+    /**
+     * Drops the oldest pages not yet sent, keeping the listener at the maximum allowed lag.
+     */
+    DROP_OLDEST,
+    /**
+     * Drops all pages not yet sent, and continues from the live edge.
+     */
+    SKIP_TO_LIVE,
+    /**
+     * Closes the connection, so that the client requests the stream again.
+     */
+    DISCONNECT;
+
+    static SlowConsumerPolicy fromEnv(String value) {
+        if (value == null || value.isEmpty()) {
+            return DROP_OLDEST;
+        }
+        return valueOf(value.toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,35 @@
+package http;
+
+import static utils.EnvConfig.envInt;
+
+/**
+ * Audio streaming settings, read once from the environment variables.
+ */
+final class StreamConfig {
+    private StreamConfig() {
+    }
+
+    // "adaptive" (default) or "fixed" Ogg page size
+    static final boolean BUFFER_ADAPTIVE = !"fixed".equalsIgnoreCase(System.getenv("MUSIC_BUFFER_MODE"));
+    static final int BUFFER_MIN_PACKETS = envInt("MUSIC_BUFFER_MIN_PACKETS", 2);
+    static final int BUFFER_MAX_PACKETS = Math.max(BUFFER_MIN_PACKETS, envInt("MUSIC_BUFFER_MAX_PACKETS", 25));
+
+    // fills gaps with silence instead of ending the stream, unless set to "0"
+    static final boolean CONTINUOUS = !"0".equals(System.getenv("MUSIC_CONTINUOUS_STREAM"));
+
+    // applies volume in the browser instead of the player, so that source Opus frames are sent untouched,
+    // unless set to "0"
+    static final boolean PASSTHROUGH = !"0".equals(System.getenv("MUSIC_PASSTHROUGH"));
+
+    // audio sent ahead of real time when a stream starts, so that the client buffer fills immediately
+    static final int BURST_MILLIS = envInt("MUSIC_BURST_MILLIS", 2000);
+
+    // recent audio sent to a (re)connecting listener before the live edge
+    static final int REPLAY_MILLIS = envInt("MUSIC_REPLAY_MILLIS", 1000);
+
+    // reaction to a listener lagging behind the live edge by more than the given number of pages
+    static final SlowConsumerPolicy SLOW_CONSUMER_POLICY =
+            SlowConsumerPolicy.fromEnv(System.getenv("MUSIC_SLOW_CONSUMER_POLICY"));
+    static final int SLOW_CONSUMER_MAX_LAG_PAGES =
+            Math.max(1, Math.min(AudioBroadcast.CAPACITY, envInt("MUSIC_SLOW_CONSUMER_MAX_LAG_PAGES", 32)));
+}
@@ -0,0 +1,295 @@
+package http;
+
+import log.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A single HTTP connection on the {@link AudioStreamServer}.
+ * Other threads only ever enqueue buffers or publish to the subscribed {@link AudioBroadcast};
+ * all socket I/O happens on the selector thread, so a stalled client never blocks the caller.
+ */
+class StreamConnection {
+    private static final int MAX_GATHER = 16;
+
+    private final AudioStreamServer server;
+    private final Logger logger;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final ByteBuffer request;
+
+    // buffers handed over by other threads
+    private final Queue<ByteBuffer> inbox;
+    // buffers being written, only touched by the selector thread
+    private final ArrayDeque<ByteBuffer> outbox;
+    // pages of the broadcast in the outbox, in order, and their views, released once written
+    private final ArrayDeque<AudioBroadcast.PageBuffer> heldPages;
+    private final ArrayDeque<ByteBuffer> heldViews;
+    private final ByteBuffer[] gather;
+    private final AtomicLong pendingBytes;
+
+    private volatile boolean closing;
+    private volatile boolean closed;
+    private UUID channelId;
+
+    // subscribed broadcast, only touched by the selector thread after subscription
+    private AudioBroadcast source;
+    private StreamStats stats;
+    private long cursor;
+    private boolean headersSent;
+    // pages dropped since this connection started lagging, or -1 if keeping up
+    private long slowDropped = -1;
+
+    StreamConnection(AudioStreamServer server, Logger logger, SocketChannel channel, SelectionKey key) {
+        this.server = server;
+        this.logger = logger;
+        this.channel = channel;
+        this.key = key;
+        this.request = ByteBuffer.allocate(2048);
+        this.inbox = new ConcurrentLinkedQueue<>();
+        this.outbox = new ArrayDeque<>();
+        this.heldPages = new ArrayDeque<>();
+        this.heldViews = new ArrayDeque<>();
+        this.gather = new ByteBuffer[MAX_GATHER];
+        this.pendingBytes = new AtomicLong();
+    }
+
+    String getRemoteAddress() {
+        try {
+            return String.valueOf(channel.getRemoteAddress());
+        } catch (IOException e) {
+            return "(closed)";
+        }
+    }
+
+    UUID getChannelId() {
+        return channelId;
+    }
+
+    void setChannelId(UUID channelId) {
+        this.channelId = channelId;
+    }
+
+    ByteBuffer getRequestBuffer() {
+        return request;
+    }
+
+    SocketChannel getChannel() {
+        return channel;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Number of bytes enqueued but not yet written to the socket.
+     * @return Pending bytes.
+     */
+    long getPendingBytes() {
+        return pendingBytes.get();
+    }
+
+    /**
+     * Starts reading pages from the broadcast, beginning with its headers, then a short replay of the recent pages
+     * so that the client can start playing immediately, and then the live edge.
+     * Called on the selector thread.
+     * @param source Broadcast.
+     * @param stats Stats of the channel, to record slow consumer decisions to.
+     */
+    void subscribe(AudioBroadcast source, StreamStats stats) {
+        this.source = source;
+        this.stats = stats;
+        long replayStart = source.getReplayStart(StreamConfig.REPLAY_MILLIS);
+        this.cursor = Math.max(replayStart, source.getHead() - StreamConfig.SLOW_CONSUMER_MAX_LAG_PAGES);
+        this.headersSent = false;
+        source.addListener(this);
+    }
+
+    /**
+     * Asks the selector thread to write whatever is available. Can be called from any thread.
+     */
+    void requestFlush() {
+        server.requestWrite(this);
+    }
+
+    /**
+     * Enqueues the buffer to be written. The buffer must not be modified afterwards.
+     * Can be called from any thread.
+     * @param buf Buffer.
+     * @return {@code false} if the connection is already closing.
+     */
+    boolean send(ByteBuffer buf) {
+        if (closing) return false;
+        pendingBytes.addAndGet(buf.remaining());
+        inbox.add(buf);
+        server.requestWrite(this);
+        return true;
+    }
+
+    /**
+     * Closes the connection after all enqueued buffers have been written.
+     * Can be called from any thread.
+     */
+    void closeGracefully() {
+        closing = true;
+        server.requestWrite(this);
+    }
+
+    /**
+     * Writes as much as possible without blocking. Called on the selector thread.
+     * @throws IOException On write error.
+     */
+    void flush() throws IOException {
+        if (closed) return;
+        ByteBuffer next;
+        while ((next = inbox.poll()) != null) {
+            outbox.add(next);
+        }
+        pullFromSource();
+        if (closed) return;
+
+        while (!outbox.isEmpty()) {
+            int n = 0;
+            for (ByteBuffer buf : outbox) {
+                if (n == MAX_GATHER) break;
+                gather[n++] = buf;
+            }
+            long written = channel.write(gather, 0, n);
+            pendingBytes.addAndGet(-written);
+            while (!outbox.isEmpty() && !outbox.peekFirst().hasRemaining()) {
+                ByteBuffer done = outbox.pollFirst();
+                if (done == heldViews.peekFirst()) {
+                    heldViews.pollFirst();
+                    source.release(heldPages.pollFirst());
+                }
+            }
+            if (written == 0) break;
+            pullFromSource();
+            if (closed) return;
+        }
+        for (int i = 0; i < MAX_GATHER; i++) {
+            gather[i] = null;
+        }
+
+        if (!outbox.isEmpty()) {
+            // socket buffer is full, continue when writable
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+            return;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (closing && inbox.isEmpty()) {
+            close();
+        }
+    }
+
+    private void pullFromSource() {
+        if (source == null || closing) return;
+        if (!headersSent) {
+            ByteBuffer headers = source.getHeaders();
+            if (headers == null) return;
+            enqueuePulled(headers.duplicate());
+            headersSent = true;
+        }
+        if (!applySlowConsumerPolicy()) return;
+        while (outbox.size() < MAX_GATHER && cursor < source.getHead()) {
+            AudioBroadcast.PageBuffer page = source.acquirePage(cursor);
+            if (page == null) {
+                // overwritten while reading
+                long tail = source.getTail();
+                stats.recordDroppedPages(tail - cursor);
+                cursor = tail;
+                continue;
+            }
+            ByteBuffer view = page.view();
+            heldPages.add(page);
+            heldViews.add(view);
+            enqueuePulled(view);
+            cursor++;
+        }
+    }
+
+    /**
+     * Keeps the lag of this connection behind the live edge bounded, according to the configured policy,
+     * so that a client that stopped reading cannot hold on to the audio produced in the meantime.
+     * @return {@code false} if the connection has been closed.
+     */
+    private boolean applySlowConsumerPolicy() {
+        long head = source.getHead();
+        long lag = head - cursor;
+        if (lag <= StreamConfig.SLOW_CONSUMER_MAX_LAG_PAGES) {
+            if (slowDropped >= 0 && lag <= StreamConfig.SLOW_CONSUMER_MAX_LAG_PAGES / 2) {
+                server.onSlowConsumer(this, "caught up after dropping " + slowDropped + " page(s)");
+                slowDropped = -1;
+            }
+            return true;
+        }
+
+        SlowConsumerPolicy policy = StreamConfig.SLOW_CONSUMER_POLICY;
+        switch (policy) {
+            case DROP_OLDEST -> {
+                long dropped = lag - StreamConfig.SLOW_CONSUMER_MAX_LAG_PAGES;
+                cursor += dropped;
+                stats.recordDroppedPages(dropped);
+                if (slowDropped < 0) {
+                    server.onSlowConsumer(this, "lagging " + lag + " page(s) behind, dropping oldest pages");
+                    slowDropped = 0;
+                }
+                slowDropped += dropped;
+            }
+            case SKIP_TO_LIVE -> {
+                cursor = head;
+                stats.recordDroppedPages(lag);
+                stats.recordSkipToLive();
+                server.onSlowConsumer(this, "lagging " + lag + " page(s) behind, skipped to live");
+            }
+            case DISCONNECT -> {
+                stats.recordSlowDisconnect();
+                server.onSlowConsumer(this, "lagging " + lag + " page(s) behind, disconnecting");
+                close();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void enqueuePulled(ByteBuffer buf) {
+        pendingBytes.addAndGet(buf.remaining());
+        outbox.add(buf);
+    }
+
+    /**
+     * Closes the connection immediately. Called on the selector thread.
+     */
+    void close() {
+        if (closed) return;
+        closed = true;
+        closing = true;
+        key.cancel();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.logException("[Music server] Failed to close stream connection for vc id " + channelId, e);
+        }
+        inbox.clear();
+        outbox.clear();
+        heldViews.clear();
+        AudioBroadcast.PageBuffer held;
+        while ((held = heldPages.poll()) != null) {
+            source.release(held);
+        }
+        pendingBytes.set(0);
+        if (source != null) {
+            source.removeListener(this);
+        }
+        server.onClosed(this);
+    }
+}
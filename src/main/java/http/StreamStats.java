@@ -0,0 +1,217 @@
+package http;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-channel audio streaming statistics.
+ * Written by the pacing threads, read by commands.
+ */
+public class StreamStats {
+    private volatile long lastTickLagNanos;
+    private volatile long maxTickLagNanos;
+    private volatile long ticks;
+    private volatile long skippedTicks;
+    private volatile boolean parked;
+    private volatile int bufferPackets;
+    private volatile int frameMillis = 20;
+    private volatile long underruns;
+    private volatile long silenceFrames;
+    private volatile int volume;
+    private volatile boolean transcoding;
+    private volatile long droppedPages;
+    private volatile long skipsToLive;
+    private volatile long slowDisconnects;
+    private volatile long streamStartLatencyNanos = -1;
+    private volatile long trackStartLatencyNanos = -1;
+    private volatile long trackGapNanos = -1;
+    private volatile long maxTrackGapNanos = -1;
+
+    void recordTickLag(long lagNanos) {
+        this.lastTickLagNanos = lagNanos;
+        if (lagNanos > this.maxTickLagNanos) {
+            this.maxTickLagNanos = lagNanos;
+        }
+        this.ticks++;
+    }
+
+    void recordSkippedTick() {
+        this.skippedTicks++;
+    }
+
+    void recordParked(boolean parked) {
+        this.parked = parked;
+    }
+
+    void recordBufferPackets(int packets) {
+        this.bufferPackets = packets;
+    }
+
+    void recordFrameMillis(int millis) {
+        this.frameMillis = millis;
+    }
+
+    void recordUnderrun() {
+        this.underruns++;
+    }
+
+    void recordSilenceFrame() {
+        this.silenceFrames++;
+    }
+
+    void recordVolume(int volume) {
+        this.volume = volume;
+    }
+
+    void recordTranscoding(boolean transcoding) {
+        this.transcoding = transcoding;
+    }
+
+    void recordDroppedPages(long pages) {
+        this.droppedPages += pages;
+    }
+
+    void recordSkipToLive() {
+        this.skipsToLive++;
+    }
+
+    void recordSlowDisconnect() {
+        this.slowDisconnects++;
+    }
+
+    void recordStreamStartLatency(long nanos) {
+        this.streamStartLatencyNanos = nanos;
+    }
+
+    void recordTrackStartLatency(long nanos) {
+        this.trackStartLatencyNanos = nanos;
+    }
+
+    void recordTrackGap(long nanos) {
+        this.trackGapNanos = nanos;
+        if (nanos > this.maxTrackGapNanos) {
+            this.maxTrackGapNanos = nanos;
+        }
+    }
+
+    public long getLastTickLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.lastTickLagNanos);
+    }
+
+    public long getMaxTickLagMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(this.maxTickLagNanos);
+    }
+
+    public long getTicks() {
+        return this.ticks;
+    }
+
+    public long getSkippedTicks() {
+        return this.skippedTicks;
+    }
+
+    /**
+     * Checks if the sender is parked, only waking up now and then to keep the stream alive while idle.
+     * @return {@code true} if parked.
+     */
+    public boolean isParked() {
+        return this.parked;
+    }
+
+    public int getBufferPackets() {
+        return this.bufferPackets;
+    }
+
+    public int getFrameMillis() {
+        return this.frameMillis;
+    }
+
+    public long getUnderruns() {
+        return this.underruns;
+    }
+
+    public long getSilenceFrames() {
+        return this.silenceFrames;
+    }
+
+    public int getVolume() {
+        return this.volume;
+    }
+
+    /**
+     * Checks if the player decodes and re-encodes every frame of the playing track,
+     * to apply the volume or because the source frames are not Opus in the output format.
+     * @return {@code true} if transcoding.
+     */
+    public boolean isTranscoding() {
+        return this.transcoding;
+    }
+
+    public long getDroppedPages() {
+        return this.droppedPages;
+    }
+
+    public long getSkipsToLive() {
+        return this.skipsToLive;
+    }
+
+    public long getSlowDisconnects() {
+        return this.slowDisconnects;
+    }
+
+    /**
+     * Time from the start of serving the channel to the first audio frame written, including the browser startup.
+     * @return Latency in milliseconds, or -1 if not started yet.
+     */
+    public long getStreamStartLatencyMillis() {
+        return toMillisOrUnknown(this.streamStartLatencyNanos);
+    }
+
+    /**
+     * Time from the start of the last track to its first audio frame written.
+     * @return Latency in milliseconds, or -1 if no track has started yet.
+     */
+    public long getTrackStartLatencyMillis() {
+        return toMillisOrUnknown(this.trackStartLatencyNanos);
+    }
+
+    /**
+     * Time from the end of the last track to the first audio frame of the track after it.
+     * @return Gap in milliseconds, or -1 if no track has followed another yet.
+     */
+    public long getTrackGapMillis() {
+        return toMillisOrUnknown(this.trackGapNanos);
+    }
+
+    public long getMaxTrackGapMillis() {
+        return toMillisOrUnknown(this.maxTrackGapNanos);
+    }
+
+    private static long toMillisOrUnknown(long nanos) {
+        return nanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    /**
+     * Formats the stats into human readable lines.
+     * @return Formatted lines.
+     */
+    public List<String> format() {
+        List<String> ret = new ArrayList<>();
+        ret.add(String.format("Tick lag: %s ms (max %s ms)", getLastTickLagMillis(), getMaxTickLagMillis()));
+        ret.add(String.format("Ticks: %s (%s skipped), %s", getTicks(), getSkippedTicks(),
+                isParked() ? "parked while idle" : "active"));
+        ret.add(String.format("Buffer: %s packets of %s ms (%s ms), %s underrun(s)",
+                getBufferPackets(), getFrameMillis(), getBufferPackets() * getFrameMillis(), getUnderruns()));
+        ret.add(String.format("Silence filled: %s ms", getSilenceFrames() * AudioPacingEngine.INTERVAL_MILLIS));
+        ret.add(String.format("Volume: %s%% (applied by %s), %s", getVolume(),
+                StreamConfig.PASSTHROUGH ? "browser" : "player",
+                isTranscoding() ? "transcoding in player" : "Opus passthrough"));
+        ret.add(String.format("Slow listeners: %s page(s) dropped, %s skip(s) to live, %s disconnect(s)",
+                getDroppedPages(), getSkipsToLive(), getSlowDisconnects()));
+        ret.add(String.format("Start latency: stream %s ms, last track %s ms",
+                getStreamStartLatencyMillis(), getTrackStartLatencyMillis()));
+        ret.add(String.format("Track switch gap: %s ms (max %s ms)", getTrackGapMillis(), getMaxTrackGapMillis()));
+        return ret;
+    }
+}
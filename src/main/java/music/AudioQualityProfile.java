@@ -0,0 +1,54 @@
+package music;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.format.OpusAudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
+
+public enum AudioQualityProfile {
+    VOICE("Mono, 60 ms frames and a lighter encoder. Uses the least CPU and bandwidth.",
+            1, 60, 4, AudioConfiguration.ResamplingQuality.LOW),
+    STANDARD("Stereo, 20 ms frames. Opus sources can be sent without re-encoding.",
+            2, 20, 10, AudioConfiguration.ResamplingQuality.LOW),
+    HIFI("Stereo, 20 ms frames and high quality resampling for non-Opus sources.",
+            2, 20, 10, AudioConfiguration.ResamplingQuality.HIGH);
+
+    private static final int SAMPLE_RATE = 48000;
+
+    private final String description;
+    private final int channels;
+    private final int frameMillis;
+    private final int encodingQuality;
+    private final AudioConfiguration.ResamplingQuality resamplingQuality;
+
+    AudioQualityProfile(String description, int channels, int frameMillis, int encodingQuality,
+                        AudioConfiguration.ResamplingQuality resamplingQuality) {
+        this.description = description;
+        this.channels = channels;
+        this.frameMillis = frameMillis;
+        this.encodingQuality = encodingQuality;
+        this.resamplingQuality = resamplingQuality;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Output format of the players using this profile.
+     * Frames longer than 20 ms are encoded by Opus as multi-frame packets, which cuts the per-packet overhead.
+     * @return Format.
+     */
+    public AudioDataFormat getFormat() {
+        return new OpusAudioDataFormat(channels, SAMPLE_RATE, SAMPLE_RATE / 1000 * frameMillis);
+    }
+
+    /**
+     * Applies this profile to a player manager configuration.
+     * @param configuration Configuration.
+     */
+    public void configure(AudioConfiguration configuration) {
+        configuration.setOutputFormat(getFormat());
+        configuration.setOpusEncodingQuality(encodingQuality);
+        configuration.setResamplingQuality(resamplingQuality);
+    }
+}
@@ -0,0 +1,554 @@
+package music;
+
+import com.sedmelluq.discord.lavaplayer.filter.PcmFilterFactory;
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.*;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import music.cache.CachedOpusAudioTrack;
+import music.cache.OpusFrameCache;
+import music.cache.OpusFrameRecorder;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+import static utils.EnvConfig.envInt;
+
+/**
+ * Audio player that switches to the next track without a gap.
+ * Shortly before the current track ends, a copy of the next track is started on a second, paused player,
+ * so that it is already opened and its head is decoded into the frame buffer. When the next track is played,
+ * the two players swap roles instead of opening the track from scratch.
+ * Listeners only receive the events of the playing player, as if it were a single player.
+ * Tracks played from the beginning to the end are recorded into the {@link OpusFrameCache} on the way,
+ * and live streams are read from the {@link SimulcastHub}, shared with the other channels playing them.
+ */
+public class GaplessAudioPlayer implements AudioPlayer {
+    // time before the end of a track to start preloading the next one, 0 to disable
+    private static final long PRELOAD_MILLIS = TimeUnit.SECONDS.toMillis(envInt("MUSIC_PRELOAD_SECONDS", 10));
+
+    // large enough for any Opus packet lavaplayer produces
+    private static final int MAX_PACKET_SIZE = 4096;
+
+    private final List<AudioEventListener> listeners;
+    private final AudioPlayerManager manager;
+    private final OpusFrameCache cache;
+    private final SimulcastHub simulcastHub;
+    // player events may arrive on the pacing thread as well as on command threads, so these are not guarded by a lock
+    private volatile AudioPlayer active;
+    private volatile AudioPlayer standby;
+    // track started on the standby player
+    private volatile AudioTrack preloaded;
+    // playing track the preloaded track follows, so that it is preloaded only once
+    private volatile AudioTrack preloadedFor;
+    private volatile boolean paused;
+    // set while a live stream is read from the shared pipeline instead of the active player
+    private volatile SimulcastHub.Subscription simulcast;
+    // set while the active player is stopped or restarted without listeners noticing
+    private volatile boolean muted;
+    private volatile Supplier<AudioTrack> nextTrack;
+    // written by the thread pulling frames, and aborted by the end events of the tracks
+    private volatile AudioTrack recordingTrack;
+    private volatile OpusFrameRecorder recorder;
+
+    public GaplessAudioPlayer(AudioPlayerManager manager, OpusFrameCache cache, SimulcastHub simulcastHub) {
+        this.listeners = new CopyOnWriteArrayList<>();
+        this.manager = manager;
+        this.cache = cache;
+        this.simulcastHub = simulcastHub;
+        this.active = manager.createPlayer();
+        this.standby = manager.createPlayer();
+        this.standby.setPaused(true);
+        this.active.addListener(this::forwardEvent);
+        this.standby.addListener(this::forwardEvent);
+        this.nextTrack = () -> null;
+    }
+
+    /**
+     * Sets the source of the track played after the current one, if it ends normally.
+     * The source is asked shortly before the end of each track, and may return {@code null} if there is none.
+     * @param nextTrack Next track source.
+     */
+    public void setNextTrackSource(@NotNull Supplier<AudioTrack> nextTrack) {
+        this.nextTrack = nextTrack;
+    }
+
+    /**
+     * Plays the given track, or its preloaded copy if it is ready.
+     * @param track Track.
+     * @return The track started, which is a different instance from the given track if the preloaded copy was used.
+     */
+    @NotNull
+    public AudioTrack playTrackOrPreloaded(@NotNull AudioTrack track) {
+        AudioTrack preloaded = this.preloaded;
+        if (preloaded != null && track != preloaded && isCopyOf(preloaded, track)) {
+            track = preloaded;
+        }
+        this.playTrack(track);
+        return track;
+    }
+
+    /**
+     * Retrieves a copy of the track that plays from the frame cache, if it was recorded with this player's output format.
+     * @param track Track.
+     * @return Cached track, or {@code null} if the track is not cached.
+     */
+    @Nullable
+    public AudioTrack getCachedTrack(@NotNull AudioTrack track) {
+        return this.cache.getCachedTrack(track, this.manager.getConfiguration());
+    }
+
+    /**
+     * Checks if the player decodes and re-encodes the frames of the playing track.
+     * lavaplayer only passes the Opus frames of a source through at 100% volume, and if they are in the output format
+     * of the player, which the mono and long frame formats never are.
+     * @return {@code true} if transcoding.
+     */
+    public boolean isTranscoding() {
+        if (this.getVolume() != 100) return true;
+        AudioTrack track = this.getPlayingTrack();
+        return track != null && !isOpusSource(track, this.manager.getConfiguration().getOutputFormat());
+    }
+
+    private static boolean isOpusSource(AudioTrack track, AudioDataFormat output) {
+        if (track instanceof CachedOpusAudioTrack) {
+            return ((CachedOpusAudioTrack) track).hasFormat(output);
+        }
+        // YouTube videos are read from their WebM audio, which is Opus in 48 kHz stereo 20 ms frames;
+        // live streams are AAC over HLS, and the other sources are not Opus either
+        AudioSourceManager source = track.getSourceManager();
+        return source != null && "youtube".equals(source.getSourceName()) && !track.getInfo().isStream
+                && "OPUS".equals(output.codecName()) && output.channelCount == 2 && output.sampleRate == 48000
+                && output.chunkSampleCount == 960;
+    }
+
+    private static boolean isCopyOf(AudioTrack preloaded, AudioTrack track) {
+        // a preloaded track always starts from the beginning
+        return track.getPosition() == 0 && preloaded.getIdentifier().equals(track.getIdentifier());
+    }
+
+    /**
+     * Stops the preloaded track, if any.
+     */
+    public void discardPreload() {
+        if (this.preloaded == null) return;
+        this.preloaded = null;
+        this.standby.stopTrack();
+    }
+
+    private void forwardEvent(AudioEvent event) {
+        if (event.player != this.active || this.muted) {
+            // the standby player is silent until it is swapped in
+            return;
+        }
+        dispatchEvent(rewrapEvent(event));
+    }
+
+    private void dispatchEvent(AudioEvent event) {
+        if (event instanceof TrackEndEvent e) {
+            finishRecording(e.track, e.endReason);
+        }
+        for (AudioEventListener listener : this.listeners) {
+            listener.onEvent(event);
+        }
+    }
+
+    /**
+     * Replaces the source of the event with this player, so that listeners never see the underlying players.
+     */
+    private AudioEvent rewrapEvent(AudioEvent event) {
+        if (event instanceof TrackStartEvent e) {
+            return new TrackStartEvent(this, e.track);
+        } else if (event instanceof TrackEndEvent e) {
+            return new TrackEndEvent(this, e.track, e.endReason);
+        } else if (event instanceof TrackExceptionEvent e) {
+            return new TrackExceptionEvent(this, e.track, e.exception);
+        } else if (event instanceof TrackStuckEvent e) {
+            return new TrackStuckEvent(this, e.track, e.thresholdMs, e.stackTrace);
+        } else if (event instanceof PlayerPauseEvent) {
+            return new PlayerPauseEvent(this);
+        } else if (event instanceof PlayerResumeEvent) {
+            return new PlayerResumeEvent(this);
+        }
+        return event;
+    }
+
+    /**
+     * Called after each provided frame. Starts the next track on the standby player
+     * once the current track is about to end.
+     */
+    private void checkPreload(AudioPlayer player) {
+        if (PRELOAD_MILLIS == 0) return;
+        AudioTrack current = player.getPlayingTrack();
+        if (current == null || current == this.preloadedFor || current.getInfo().isStream) return;
+        if (current.getDuration() - current.getPosition() > PRELOAD_MILLIS) return;
+
+        AudioTrack next = this.nextTrack.get();
+        // the source is asked once per track, even if there is nothing to preload
+        this.preloadedFor = current;
+        // shared live streams are joined at the live edge, there is nothing to buffer ahead
+        if (next == null || this.simulcastHub.canShare(next)) return;
+        discardPreload();
+
+        AudioTrack copy = getCachedTrack(next);
+        if (copy == null) {
+            copy = next.makeClone();
+        }
+        this.preloaded = copy;
+        // the standby player stays paused, so the track only fills its frame buffer
+        this.standby.playTrack(copy);
+    }
+
+    /**
+     * Called after each provided frame. Records the frames of a track played from the beginning.
+     */
+    private void record(AudioPlayer player, AudioFrame frame) {
+        AudioTrack track = player.getPlayingTrack();
+        OpusFrameRecorder recorder = this.recorder;
+        if (track != this.recordingTrack) {
+            if (recorder != null) {
+                recorder.abort();
+            }
+            this.recordingTrack = track;
+            recorder = track != null && frame.getTimecode() == 0 ? this.cache.startRecording(track, this.manager.getConfiguration()) : null;
+            this.recorder = recorder;
+        }
+        if (recorder != null && !recorder.append(frame)) {
+            this.recorder = null;
+        }
+    }
+
+    private void finishRecording(AudioTrack track, AudioTrackEndReason endReason) {
+        OpusFrameRecorder recorder = this.recorder;
+        if (track != this.recordingTrack || recorder == null) return;
+        this.recorder = null;
+        if (endReason == AudioTrackEndReason.FINISHED) {
+            recorder.finish();
+        } else {
+            recorder.abort();
+        }
+    }
+
+    /**
+     * Retrieves the number of channels sharing the live stream being played, including this one.
+     * @return Number of channels, or 0 if not playing a shared stream.
+     */
+    public int getSimulcastSubscribers() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        return subscription != null ? subscription.getSubscribers() : 0;
+    }
+
+    /**
+     * Stops the playing track without notifying listeners, whether it is shared or on the active player.
+     * @return The stopped track, or {@code null} if nothing was playing.
+     */
+    @Nullable
+    private AudioTrack stopSilently() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            this.simulcast = null;
+            subscription.close();
+            return subscription.getTrack();
+        }
+        AudioTrack track = this.active.getPlayingTrack();
+        this.muted = true;
+        try {
+            this.active.stopTrack();
+        } finally {
+            this.muted = false;
+        }
+        return track;
+    }
+
+    private void startShared(AudioTrack track) {
+        AudioTrack previousTrack = stopSilently();
+        this.simulcast = this.simulcastHub.subscribe(this.manager, track);
+        if (previousTrack != null) {
+            dispatchEvent(new TrackEndEvent(this, previousTrack, AudioTrackEndReason.REPLACED));
+        }
+        dispatchEvent(new TrackStartEvent(this, track));
+    }
+
+    /**
+     * Continues the shared live stream on a pipeline of this channel, e.g. to apply a volume of its own.
+     * Listeners are not notified, as the same stream goes on.
+     */
+    private void leaveSimulcast() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription == null) return;
+        this.simulcast = null;
+        subscription.close();
+        this.muted = true;
+        try {
+            this.active.playTrack(subscription.getTrack().makeClone());
+        } finally {
+            this.muted = false;
+        }
+    }
+
+    /**
+     * Reads a frame of the shared live stream. Notifies listeners of exceptions of the shared player,
+     * and when the stream has ended.
+     */
+    private boolean provideShared(SimulcastHub.Subscription subscription, MutableAudioFrame targetFrame) {
+        if (this.paused) return false;
+        forwardException(subscription);
+        if (subscription.read(targetFrame)) return true;
+        AudioTrackEndReason endReason = subscription.getEndReason();
+        if (endReason == null || this.simulcast != subscription) return false;
+
+        this.simulcast = null;
+        subscription.close();
+        // the exception, if any, is thrown before the end
+        forwardException(subscription);
+        dispatchEvent(new TrackEndEvent(this, subscription.getTrack(), endReason));
+        // the end event may have started the next track
+        SimulcastHub.Subscription next = this.simulcast;
+        return next != null ? next.read(targetFrame) : this.active.provide(targetFrame);
+    }
+
+    private void forwardException(SimulcastHub.Subscription subscription) {
+        FriendlyException exception = subscription.pollException();
+        if (exception != null) {
+            dispatchEvent(new TrackExceptionEvent(this, subscription.getTrack(), exception));
+        }
+    }
+
+    private AudioFrame provideSharedCopy(SimulcastHub.Subscription subscription) {
+        MutableAudioFrame frame = new MutableAudioFrame();
+        frame.setBuffer(ByteBuffer.allocate(MAX_PACKET_SIZE));
+        return provideShared(subscription, frame) ? frame : null;
+    }
+
+    @Override
+    public AudioTrack getPlayingTrack() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        return subscription != null ? subscription.getTrack() : this.active.getPlayingTrack();
+    }
+
+    @Override
+    public void playTrack(AudioTrack track) {
+        this.startTrack(track, false);
+    }
+
+    @Override
+    public boolean startTrack(AudioTrack track, boolean noInterrupt) {
+        if (noInterrupt && getPlayingTrack() != null) {
+            return false;
+        }
+
+        AudioPlayer next = this.standby;
+        if (track == null || track != this.preloaded || next.getPlayingTrack() != track) {
+            discardPreload();
+            if (track != null && this.simulcastHub.canShare(track) && this.getVolume() == 100) {
+                startShared(track);
+                return true;
+            }
+            SimulcastHub.Subscription subscription = this.simulcast;
+            if (subscription != null) {
+                stopSilently();
+                dispatchEvent(new TrackEndEvent(this, subscription.getTrack(),
+                        track != null ? AudioTrackEndReason.REPLACED : AudioTrackEndReason.STOPPED));
+            }
+            return this.active.startTrack(track, noInterrupt);
+        }
+
+        AudioPlayer previous = this.active;
+        AudioTrack previousTrack = stopSilently();
+
+        // swap the players while the events of both are not forwarded
+        this.preloaded = null;
+        next.setPaused(this.paused);
+        this.active = next;
+        this.standby = previous;
+        previous.setPaused(true);
+
+        if (previousTrack != null) {
+            dispatchEvent(new TrackEndEvent(this, previousTrack, AudioTrackEndReason.REPLACED));
+        }
+        dispatchEvent(new TrackStartEvent(this, track));
+        return true;
+    }
+
+    /**
+     * Stops the playing track. The preloaded track is kept, so that skipping to it is still instant.
+     */
+    @Override
+    public void stopTrack() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            stopSilently();
+            dispatchEvent(new TrackEndEvent(this, subscription.getTrack(), AudioTrackEndReason.STOPPED));
+            return;
+        }
+        this.active.stopTrack();
+    }
+
+    @Override
+    public int getVolume() {
+        return this.active.getVolume();
+    }
+
+    @Override
+    public void setVolume(int volume) {
+        this.active.setVolume(volume);
+        this.standby.setVolume(volume);
+        if (volume != 100) {
+            // the shared frames are encoded without any volume applied
+            leaveSimulcast();
+        }
+    }
+
+    @Override
+    public void setFilterFactory(PcmFilterFactory factory) {
+        this.active.setFilterFactory(factory);
+        this.standby.setFilterFactory(factory);
+    }
+
+    @Override
+    public void setFrameBufferDuration(Integer duration) {
+        this.active.setFrameBufferDuration(duration);
+        this.standby.setFrameBufferDuration(duration);
+    }
+
+    @Override
+    public boolean isPaused() {
+        return this.paused;
+    }
+
+    @Override
+    public void setPaused(boolean value) {
+        this.paused = value;
+        this.active.setPaused(value);
+    }
+
+    @Override
+    public void destroy() {
+        this.preloaded = null;
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            this.simulcast = null;
+            subscription.close();
+        }
+        OpusFrameRecorder recorder = this.recorder;
+        if (recorder != null) {
+            recorder.abort();
+        }
+        this.active.destroy();
+        this.standby.destroy();
+    }
+
+    @Override
+    public void addListener(AudioEventListener listener) {
+        this.listeners.add(listener);
+    }
+
+    @Override
+    public void removeListener(AudioEventListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    @Override
+    public void checkCleanup(long threshold) {
+        this.active.checkCleanup(threshold);
+        this.standby.checkCleanup(threshold);
+    }
+
+    // When the track of the active player ends inside provide, the end event may start the next track
+    // on the other player right away; the frame is then taken from there within the same call.
+
+    @Override
+    public AudioFrame provide() {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            return provideSharedCopy(subscription);
+        }
+        AudioPlayer player = this.active;
+        AudioFrame frame = player.provide();
+        if (frame == null && player != this.active) {
+            player = this.active;
+            frame = player.provide();
+        }
+        if (frame != null) {
+            record(player, frame);
+            checkPreload(player);
+        }
+        return frame;
+    }
+
+    @Override
+    public AudioFrame provide(long timeout, TimeUnit unit) throws TimeoutException, InterruptedException {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            return provideSharedCopy(subscription);
+        }
+        AudioPlayer player = this.active;
+        AudioFrame frame = player.provide(timeout, unit);
+        if (frame == null && player != this.active) {
+            player = this.active;
+            frame = player.provide(timeout, unit);
+        }
+        if (frame != null) {
+            record(player, frame);
+            checkPreload(player);
+        }
+        return frame;
+    }
+
+    @Override
+    public boolean provide(MutableAudioFrame targetFrame) {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            return provideShared(subscription, targetFrame);
+        }
+        AudioPlayer player = this.active;
+        boolean provided = player.provide(targetFrame);
+        if (!provided && this.simulcast != null) {
+            return provideShared(this.simulcast, targetFrame);
+        }
+        if (!provided && player != this.active) {
+            player = this.active;
+            provided = player.provide(targetFrame);
+        }
+        if (provided) {
+            record(player, targetFrame);
+            checkPreload(player);
+        }
+        return provided;
+    }
+
+    @Override
+    public boolean provide(MutableAudioFrame targetFrame, long timeout, TimeUnit unit)
+            throws TimeoutException, InterruptedException {
+        SimulcastHub.Subscription subscription = this.simulcast;
+        if (subscription != null) {
+            return provideShared(subscription, targetFrame);
+        }
+        AudioPlayer player = this.active;
+        boolean provided = player.provide(targetFrame, timeout, unit);
+        if (!provided && this.simulcast != null) {
+            return provideShared(this.simulcast, targetFrame);
+        }
+        if (!provided && player != this.active) {
+            player = this.active;
+            provided = player.provide(targetFrame, timeout, unit);
+        }
+        if (provided) {
+            record(player, targetFrame);
+            checkPreload(player);
+        }
+        return provided;
+    }
+}
@@ -7,25 +7,43 @@ import com.github.motoki317.traq_ws_bot.model.MessageCreatedEvent;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
 import commands.ChannelCommand;
 import heartbeat.HeartBeatTask;
 import log.Logger;
+import music.cache.OpusFrameCache;
 import music.handlers.*;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
 
 public class Music extends ChannelCommand {
     private static final Map<String, MusicState> states;
-    private static final AudioPlayerManager playerManager;
+    // the output format is set per player manager, so keep one for each quality profile
+    private static final Map<AudioQualityProfile, AudioPlayerManager> playerManagers;
+    private static final OpusFrameCache frameCache;
+    private static final SimulcastHub simulcastHub;
 
     static {
         states = new HashMap<>();
-        playerManager = new DefaultAudioPlayerManager();
-        AudioSourceManagers.registerRemoteSources(playerManager);
+        playerManagers = new EnumMap<>(AudioQualityProfile.class);
+        for (AudioQualityProfile profile : AudioQualityProfile.values()) {
+            AudioPlayerManager playerManager = new DefaultAudioPlayerManager();
+            profile.configure(playerManager.getConfiguration());
+            // frames are pulled into a reused buffer by MusicServerAudioProvider, so that no garbage is produced per frame
+            playerManager.getConfiguration().setFrameBufferFactory(NonAllocatingAudioFrameBuffer::new);
+            // paused players are not polled by the parked senders, and would otherwise be stopped with CLEANUP
+            // after a minute, leaving their queue stuck; all players are destroyed explicitly when leaving a channel
+            playerManager.setPlayerCleanupThreshold(Long.MAX_VALUE);
+            AudioSourceManagers.registerRemoteSources(playerManager);
+            playerManagers.put(profile, playerManager);
+        }
+        frameCache = new OpusFrameCache();
+        simulcastHub = new SimulcastHub();
     }
 
     private final Map<String, MusicSubCommandHandler> commands;
@@ -45,7 +63,7 @@ public class Music extends ChannelCommand {
         this.commands = new HashMap<>();
         this.traqApi = app.getTraqApi();
         this.logger = app.getLogger();
-        this.playHandler = new MusicPlayHandler(app, states, playerManager);
+        this.playHandler = new MusicPlayHandler(app, states, playerManagers, frameCache, simulcastHub);
         this.managementHandler = new MusicManagementHandler(app);
         this.settingHandler = new MusicSettingHandler(app, states);
 
@@ -169,6 +187,10 @@ public class Music extends ChannelCommand {
                 (event, res, args, vcId, state) -> this.managementHandler.handlePurge(res, state)
         ));
 
+        commands.put("stats", requireMusicState(
+                (event, res, args, vcId, state) -> this.managementHandler.handleStats(res, vcId, state)
+        ));
+
         // Setting handlers
         commands.put("v", this.settingHandler.handleVolume);
         commands.put("vol", this.settingHandler.handleVolume);
@@ -220,6 +242,7 @@ public class Music extends ChannelCommand {
                 "**m seek <time>** : Seeks the current song to the specified time. e.g. `m seek 1:50`",
                 "**m shuffle** : Shuffles the queue.",
                 "**m purge** : Purges all waiting songs in the queue. Does not stop the current song.",
+                "**m stats** : Shows audio streaming statistics of the player.",
                 "",
                 "### Settings",
                 "**m volume <percentage>** : Sets the volume. e.g. `m volume 50`",
@@ -1,114 +1,158 @@
 package music;
 
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
-import org.chenliang.oggus.ogg.OggPage;
-import org.chenliang.oggus.opus.*;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import music.ogg.OggPageWriter;
+import music.ogg.OpusHeaderPages;
 
+import java.nio.ByteBuffer;
 import java.util.Random;
 
 public class MusicServerAudioProvider {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0).asReadOnlyBuffer();
+    // 20 ms CELT fullband frame with no energy, decoded as digital silence (RFC 6716 section 3.1)
+    private static final byte[] SILENCE_MONO = {(byte) 0xF8, (byte) 0xFF, (byte) 0xFE};
+    private static final byte[] SILENCE_STEREO = {(byte) 0xFC, (byte) 0xFF, (byte) 0xFE};
+
+    // large enough for any Opus packet lavaplayer produces
+    private static final int MAX_PACKET_SIZE = 4096;
+    // granule positions of Ogg Opus are always counted at 48 kHz (RFC 7845 section 4)
+    private static final int GRANULE_RATE = 48000;
+    private static final int SILENCE_GRANULES = GRANULE_RATE / 1000 * 20;
+
     private final AudioPlayer audioPlayer;
-    private AudioFrame lastFrame;
-    private long seq;
+    // reused for every frame pulled from the player
+    private final MutableAudioFrame frame;
+    private final byte[] packet;
+    private int packetLength;
+    private int packetGranules;
+    private int packetMillis;
+    private int seq;
     private long granulePosition;
-    private final long serialNum;
-    private OggPage page;
-    private int bufferedPackets;
-    private final int internalBufferPackets;
+    private final int serialNum;
+    private final OggPageWriter writer;
+    // may be set from a player event thread while the pacing thread buffers frames
+    private volatile int internalBufferPackets;
+    private byte[] silence;
+    private ByteBuffer headers;
 
     public MusicServerAudioProvider(AudioPlayer audioPlayer, int internalBufferPackets) {
         this.audioPlayer = audioPlayer;
+        this.frame = new MutableAudioFrame();
+        this.frame.setBuffer(ByteBuffer.allocate(MAX_PACKET_SIZE));
+        this.packet = new byte[MAX_PACKET_SIZE];
         this.seq = 2;
         this.granulePosition = 0;
-        this.serialNum = new Random().nextLong();
-        this.page = OggPage.empty();
-        this.bufferedPackets = 0;
+        this.serialNum = new Random().nextInt();
+        this.writer = new OggPageWriter();
         this.internalBufferPackets = internalBufferPackets;
     }
 
+    /**
+     * Sets the number of packets buffered into one page, applied from the page currently being filled.
+     * @param packets Packets per page.
+     */
+    public void setInternalBufferPackets(int packets) {
+        this.internalBufferPackets = packets;
+    }
+
     public int internalBufferedPackets() {
-        return this.bufferedPackets;
+        return this.writer.packets();
     }
 
+    /**
+     * Pulls the next frame from the player into the reused buffer, without allocating.
+     * @return {@code true} if a frame was available.
+     */
     public boolean canProvide() {
-        lastFrame = audioPlayer.provide();
-        return lastFrame != null;
+        if (!audioPlayer.provide(frame)) {
+            return false;
+        }
+        packetLength = frame.getDataLength();
+        frame.getData(packet, 0);
+        var format = frame.getFormat();
+        packetGranules = (int) ((long) format.chunkSampleCount * GRANULE_RATE / format.sampleRate);
+        packetMillis = (int) (1000L * format.chunkSampleCount / format.sampleRate);
+        return true;
+    }
+
+    /**
+     * Duration of the last provided frame, which depends on the format of the player.
+     * @return Duration in milliseconds.
+     */
+    public int frameMillis() {
+        return packetMillis;
     }
 
     /**
-     * Generates bitstream for the ID Header and Comment Header for OGG Opus stream.
+     * Retrieves the ID Header and Comment Header pages for OGG Opus stream.
      * Should be called AFTER the first true returned by {@link #canProvide()},
      * and sent before providing audio.
-     * @return Bytes.
+     * The pages are built once for this stream, and can be sent to any number of connections.
+     * @return Read-only buffer containing both pages.
      */
-    public byte[] headerPageZero() {
-        // https://tools.ietf.org/html/rfc7845
-        var headerPage = OggPage.empty();
-        var header = IdHeader.emptyHeader();
-        var format = lastFrame.getFormat();
-        header.setChannelCount(format.channelCount);
-        header.setInputSampleRate(format.sampleRate);
-        header.setMinorVersion(1);
-        headerPage.addDataPacket(header.dump());
-        headerPage.setSeqNum(0);
-        headerPage.setBOS();
-        headerPage.setSerialNum(serialNum);
-
-        return headerPage.dump();
+    public ByteBuffer headerPages() {
+        if (headers == null) {
+            var format = frame.getFormat();
+            this.silence = format.channelCount == 1 ? SILENCE_MONO : SILENCE_STEREO;
+            this.headers = OpusHeaderPages.get(format.channelCount, format.sampleRate, serialNum);
+        }
+        return headers.duplicate();
     }
 
-    public byte[] headerPageOne() {
-        var commentPage = OggPage.empty();
-        var comment = CommentHeader.emptyHeader();
-        comment.setVendor("libopus 1.1");
-        byte[] buf = new byte[764];
-        byte[] comm = comment.dump();
-        System.arraycopy(comm, 0, buf, 0, comm.length);
-
-        commentPage.addDataPacket(buf);
-        commentPage.setSeqNum(1);
-        commentPage.setSerialNum(serialNum);
-
-        return commentPage.dump();
+    /**
+     * Buffers the last provided frame, and returns a page once enough packets are buffered.
+     * The returned buffer is only valid until the next call to this provider.
+     * @return Page, or an empty buffer if still buffering.
+     */
+    public ByteBuffer provideAudio() {
+        return buffer(packet, packetLength, packetGranules);
     }
 
-    public byte[] provide20MsAudio() {
-        OpusPacket packet = OpusPackets.from(lastFrame.getData());
-
-        var audioDataPacket = AudioDataPacket.empty();
-        audioDataPacket.addOpusPacket(packet);
+    /**
+     * Buffers 20 ms of silence in place of a frame, keeping the stream and its granule position going
+     * while the player has nothing to play.
+     * Should be called only after the header pages have been generated.
+     * The returned buffer is only valid until the next call to this provider.
+     * @return Page, or an empty buffer if still buffering.
+     */
+    public ByteBuffer provide20MsSilence() {
+        return buffer(this.silence, this.silence.length, SILENCE_GRANULES);
+    }
 
-        this.page.addDataPacket(audioDataPacket.dump());
-        // 48000 Hz / 1000 * 20ms = 960
-        this.granulePosition += 960;
-        this.bufferedPackets++;
+    private ByteBuffer buffer(byte[] data, int length, int granules) {
+        ByteBuffer full = EMPTY;
+        if (!writer.canFit(length)) {
+            // the page is full before reaching the packet count, e.g. while buffering silence:
+            // send it as it is, and start the next page with this packet
+            full = dumpPage(0);
+        }
+        writer.addPacket(data, 0, length);
+        this.granulePosition += granules;
 
-        if (this.bufferedPackets < this.internalBufferPackets) {
-            return new byte[]{};
+        if (full.hasRemaining() || writer.packets() < this.internalBufferPackets) {
+            return full;
         }
 
-        byte[] data = dumpPage();
-        this.page = OggPage.empty();
-        this.bufferedPackets = 0;
-        return data;
+        return dumpPage(0);
     }
 
-    private byte[] dumpPage() {
-        page.setGranulePosition(this.granulePosition);
-        page.setSeqNum(this.seq);
-        page.setSerialNum(this.serialNum);
-        this.seq++;
+    private ByteBuffer dumpPage(int flags) {
+        return writer.finishPage(flags, this.granulePosition, this.serialNum, this.seq++);
+    }
 
-        return page.dump();
+    /**
+     * Returns the buffered packets as a page right away, without ending the stream.
+     * The returned buffer is only valid until the next call to this provider.
+     * @return Page, or an empty buffer if no packets are buffered.
+     */
+    public ByteBuffer flushPage() {
+        if (writer.packets() == 0) return EMPTY;
+        return dumpPage(0);
     }
 
-    public byte[] flush() {
+    public ByteBuffer flush() {
         System.out.println("[Music Provider] flushed");
-        this.page.setEOS();
-        byte[] data = dumpPage();
-        this.page = OggPage.empty();
-        this.bufferedPackets = 0;
-        return data;
+        return dumpPage(OggPageWriter.FLAG_EOS);
     }
 }
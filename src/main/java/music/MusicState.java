@@ -1,6 +1,5 @@
 package music;
 
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import db.model.musicSetting.MusicSetting;
 import music.exception.DuplicateTrackException;
@@ -9,7 +8,7 @@ import music.exception.QueueFullException;
 import java.util.List;
 
 public class MusicState {
-    private final AudioPlayer player;
+    private final GaplessAudioPlayer player;
     private final TrackScheduler scheduler;
     private final MusicSetting setting;
     private long lastInteract;
@@ -17,7 +16,7 @@ public class MusicState {
     private final String voiceChannelId;
     private final String textChannelId;
 
-    public MusicState(AudioPlayer player, TrackScheduler scheduler, MusicSetting setting, String voiceChannelId, String textChannelId) {
+    public MusicState(GaplessAudioPlayer player, TrackScheduler scheduler, MusicSetting setting, String voiceChannelId, String textChannelId) {
         this.player = player;
         this.scheduler = scheduler;
         this.setting = setting;
@@ -44,7 +43,7 @@ public class MusicState {
         this.scheduler.shuffleQueue();
     }
 
-    public AudioPlayer getPlayer() {
+    public GaplessAudioPlayer getPlayer() {
         return this.player;
     }
 
@@ -66,6 +65,7 @@ public class MusicState {
 
     public void stopPlaying() {
         this.scheduler.clearQueue();
+        this.player.discardPreload();
         this.player.stopTrack();
     }
 
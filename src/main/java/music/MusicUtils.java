@@ -1,6 +1,7 @@
 package music;
 
 import api.TraqApi;
+import api.WebRTCStateSnapshot;
 import com.github.motoki317.traq4j.model.User;
 import com.github.motoki317.traq4j.model.WebRTCUserState;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
@@ -73,23 +74,12 @@ public class MusicUtils {
      */
     @Nullable
     public static QallState getVoiceChannel(@NotNull TraqApi traqApi, @NotNull UUID userId) {
-        List<WebRTCUserState> states = traqApi.getWebRTCState();
-        if (states == null) {
+        WebRTCStateSnapshot snapshot = traqApi.getWebRTCStateSnapshot();
+        if (snapshot == null) {
             return null;
         }
-        for (WebRTCUserState state : states) {
-            if (state.getUserId().equals(userId)) {
-                var sessions = state.getSessions();
-                QallState qs;
-                if (sessions.size() == 0) {
-                    qs = new QallState(state.getChannelId(), "");
-                } else {
-                    qs = new QallState(state.getChannelId(), sessions.get(0).getSessionId());
-                }
-                return qs;
-            }
-        }
-        return null;
+        WebRTCUserState state = snapshot.getUserState(userId);
+        return state != null ? toQallState(state) : null;
     }
 
     /**
@@ -100,23 +90,20 @@ public class MusicUtils {
      */
     @Nullable
     public static QallState getVoiceChannelByID(@NotNull TraqApi traqApi, @NotNull UUID channelId) {
-        List<WebRTCUserState> states = traqApi.getWebRTCState();
-        if (states == null) {
+        WebRTCStateSnapshot snapshot = traqApi.getWebRTCStateSnapshot();
+        if (snapshot == null) {
             return null;
         }
-        for (WebRTCUserState state : states) {
-            if (state.getChannelId().equals(channelId)) {
-                var sessions = state.getSessions();
-                QallState qs;
-                if (sessions.size() == 0) {
-                    qs = new QallState(state.getChannelId(), "");
-                } else {
-                    qs = new QallState(state.getChannelId(), sessions.get(0).getSessionId());
-                }
-                return qs;
-            }
+        List<WebRTCUserState> states = snapshot.getChannelStates(channelId);
+        return states.isEmpty() ? null : toQallState(states.get(0));
+    }
+
+    private static QallState toQallState(WebRTCUserState state) {
+        var sessions = state.getSessions();
+        if (sessions.size() == 0) {
+            return new QallState(state.getChannelId(), "");
         }
-        return null;
+        return new QallState(state.getChannelId(), sessions.get(0).getSessionId());
     }
 
     /**
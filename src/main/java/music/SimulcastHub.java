@@ -0,0 +1,221 @@
+package music;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackEndEvent;
+import com.sedmelluq.discord.lavaplayer.player.event.TrackExceptionEvent;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shares one decode and encode pipeline among the channels playing the same live stream.
+ * The first channel to play a stream starts it on a shared player, and the frames pulled from it are kept
+ * in a short ring, from which every subscribed channel reads at its own pace.
+ * Streams are shared per player manager, since the output format differs between quality profiles.
+ */
+public class SimulcastHub {
+    // frames kept for the subscribers, also sent as the initial burst to a channel joining a running stream
+    private static final int CAPACITY = 100;
+    // large enough for any Opus packet lavaplayer produces
+    private static final int MAX_PACKET_SIZE = 4096;
+
+    private final boolean enabled;
+    private final Map<Key, SharedStream> streams;
+
+    private record Key(AudioPlayerManager manager, String uri) {
+    }
+
+    public SimulcastHub() {
+        // shares live streams among channels, unless set to "0"
+        this.enabled = !"0".equals(System.getenv("MUSIC_SIMULCAST"));
+        this.streams = new HashMap<>();
+    }
+
+    /**
+     * Checks if the track is played through a shared pipeline.
+     * @param track Track.
+     * @return {@code true} if the track can be shared.
+     */
+    public boolean canShare(@NotNull AudioTrack track) {
+        return this.enabled && track.getInfo().isStream && track.getInfo().uri != null;
+    }
+
+    /**
+     * Subscribes to the shared pipeline of the stream, starting one if no other channel is playing it.
+     * @param manager Player manager with the output format of the channel.
+     * @param track Track of the channel, which is never started itself.
+     * @return Subscription.
+     */
+    @NotNull
+    public synchronized Subscription subscribe(@NotNull AudioPlayerManager manager, @NotNull AudioTrack track) {
+        Key key = new Key(manager, track.getInfo().uri);
+        SharedStream stream = this.streams.get(key);
+        if (stream == null || stream.endReason != null) {
+            stream = new SharedStream(key, manager.createPlayer(), track.makeClone());
+            this.streams.put(key, stream);
+        }
+        stream.subscribers++;
+        return new Subscription(stream, track);
+    }
+
+    private synchronized void unsubscribe(SharedStream stream) {
+        stream.subscribers--;
+        if (stream.subscribers == 0) {
+            this.streams.remove(stream.key, stream);
+            stream.player.destroy();
+        }
+    }
+
+    private static final class SharedStream {
+        private final Key key;
+        private final AudioPlayer player;
+        private final MutableAudioFrame pulled;
+        private final byte[][] data;
+        private final int[] lengths;
+        private final long[] timecodes;
+        private final int[] volumes;
+        private final AudioDataFormat[] formats;
+        // number of frames pulled from the player so far
+        private long head;
+        // guarded by the hub
+        private int subscribers;
+        private volatile AudioTrackEndReason endReason;
+        // last exception of the shared player, forwarded to each subscriber once
+        private volatile FriendlyException exception;
+
+        private SharedStream(Key key, AudioPlayer player, AudioTrack track) {
+            this.key = key;
+            this.player = player;
+            this.pulled = new MutableAudioFrame();
+            this.pulled.setBuffer(ByteBuffer.allocate(MAX_PACKET_SIZE));
+            this.data = new byte[CAPACITY][];
+            this.lengths = new int[CAPACITY];
+            this.timecodes = new long[CAPACITY];
+            this.volumes = new int[CAPACITY];
+            this.formats = new AudioDataFormat[CAPACITY];
+            // only records the end and exceptions here, the subscribers notice them on their next read
+            this.player.addListener(event -> {
+                if (event instanceof TrackEndEvent e) {
+                    this.endReason = e.endReason;
+                } else if (event instanceof TrackExceptionEvent e) {
+                    this.exception = e.exception;
+                }
+            });
+            this.player.playTrack(track);
+        }
+
+        private synchronized boolean read(Subscription subscription, MutableAudioFrame target) {
+            // a new subscriber, or one that has fallen behind e.g. while paused, skips to the oldest frame kept
+            subscription.cursor = Math.max(subscription.cursor, this.head - CAPACITY);
+            if (subscription.cursor == this.head) {
+                if (this.endReason != null || !this.player.provide(this.pulled)) {
+                    return false;
+                }
+                keep(this.pulled);
+            }
+
+            int slot = (int) (subscription.cursor++ % CAPACITY);
+            target.store(this.data[slot], 0, this.lengths[slot]);
+            target.setTimecode(this.timecodes[slot]);
+            target.setVolume(this.volumes[slot]);
+            target.setFormat(this.formats[slot]);
+            return true;
+        }
+
+        private void keep(MutableAudioFrame frame) {
+            int slot = (int) (this.head++ % CAPACITY);
+            int length = frame.getDataLength();
+            if (this.data[slot] == null || this.data[slot].length < length) {
+                this.data[slot] = new byte[length];
+            }
+            frame.getData(this.data[slot], 0);
+            this.lengths[slot] = length;
+            this.timecodes[slot] = frame.getTimecode();
+            this.volumes[slot] = frame.getVolume();
+            this.formats[slot] = frame.getFormat();
+        }
+    }
+
+    /**
+     * Subscription of one channel to a shared stream.
+     */
+    public final class Subscription {
+        private final SharedStream stream;
+        private final AudioTrack track;
+        // next frame to read, guarded by the stream
+        private long cursor;
+        private boolean closed;
+        // last exception forwarded to the channel, only touched on the thread reading frames
+        private FriendlyException forwardedException;
+
+        private Subscription(SharedStream stream, AudioTrack track) {
+            this.stream = stream;
+            this.track = track;
+            // starts from the oldest frame kept
+            this.cursor = 0;
+        }
+
+        /**
+         * Retrieves the track of the channel.
+         * @return Track.
+         */
+        public AudioTrack getTrack() {
+            return this.track;
+        }
+
+        /**
+         * Reads the next frame of the stream, pulling it from the shared player if no other channel has yet.
+         * @param target Frame to copy into.
+         * @return {@code true} if a frame was available.
+         */
+        public boolean read(MutableAudioFrame target) {
+            return this.stream.read(this, target);
+        }
+
+        /**
+         * Retrieves the reason the stream ended for. The stream is over for this channel once a read fails after it ended.
+         * @return End reason, or {@code null} if the stream is still running.
+         */
+        public AudioTrackEndReason getEndReason() {
+            return this.stream.endReason;
+        }
+
+        /**
+         * Retrieves the exception thrown by the shared player since the last call, if any.
+         * Called by the thread reading frames.
+         * @return Exception to forward to the listeners of the channel, or {@code null} if none.
+         */
+        @Nullable
+        public FriendlyException pollException() {
+            FriendlyException exception = this.stream.exception;
+            if (exception == null || exception == this.forwardedException) return null;
+            this.forwardedException = exception;
+            return exception;
+        }
+
+        /**
+         * Retrieves the number of channels sharing the stream, including this one.
+         * @return Number of channels.
+         */
+        public int getSubscribers() {
+            synchronized (SimulcastHub.this) {
+                return this.stream.subscribers;
+            }
+        }
+
+        public synchronized void close() {
+            if (this.closed) return;
+            this.closed = true;
+            unsubscribe(this.stream);
+        }
+    }
+}
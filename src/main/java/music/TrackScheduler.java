@@ -54,10 +54,21 @@ public class TrackScheduler extends AudioEventAdapter {
         /**
          * Plays the specified track.
          * @param track Audio track
+         * @return The track started, which may be a preloaded copy of the specified track.
          */
-        void playTrack(AudioTrack track);
+        AudioTrack playTrack(AudioTrack track);
+
+        /**
+         * Retrieves a copy of the track that plays from the local cache.
+         * @param track Audio track
+         * @return Cached track starting from the beginning, or {@code null} if not cached.
+         */
+        @Nullable
+        AudioTrack getCachedTrack(AudioTrack track);
     }
 
+    // guarded by itself, as the next track is peeked from the pacing thread while commands modify the queue;
+    // the player is never called with the lock held
     private final Deque<QueueEntry> queue;
 
     private final SchedulerGateway gateway;
@@ -71,12 +82,14 @@ public class TrackScheduler extends AudioEventAdapter {
      * Shuffles the queue. Retains the position of the current playing track (first element in the queue).
      */
     void shuffleQueue() {
-        QueueEntry first = this.queue.poll();
-        List<QueueEntry> others = new ArrayList<>(this.queue);
-        Collections.shuffle(others);
-        this.queue.clear();
-        this.queue.add(first);
-        this.queue.addAll(others);
+        synchronized (this.queue) {
+            QueueEntry first = this.queue.poll();
+            List<QueueEntry> others = new ArrayList<>(this.queue);
+            Collections.shuffle(others);
+            this.queue.clear();
+            this.queue.add(first);
+            this.queue.addAll(others);
+        }
     }
 
     private static boolean hasDuplicate(Deque<QueueEntry> queue, QueueEntry toQueue) {
@@ -85,19 +98,28 @@ public class TrackScheduler extends AudioEventAdapter {
     }
 
     void enqueue(QueueEntry entry) throws DuplicateTrackException, QueueFullException {
-        if (hasDuplicate(this.queue, entry)) {
-            throw new DuplicateTrackException("The current queue contains a duplicate track!");
-        }
-        if (QUEUE_LIMIT <= this.queue.size()) {
-            throw new QueueFullException(String.format(
-                    "Queue full (size: %s)! Please empty some slots in the queue before you enqueue new songs.",
-                    this.queue.size()));
+        AudioTrack cached = this.gateway.getCachedTrack(entry.getTrack());
+        if (cached != null) {
+            cached.setPosition(entry.getTrack().getPosition());
+            entry = new QueueEntry(cached, entry.getUserId());
         }
 
-        boolean toStartPlaying = this.queue.isEmpty();
-        this.queue.add(entry);
+        boolean toStartPlaying;
+        synchronized (this.queue) {
+            if (hasDuplicate(this.queue, entry)) {
+                throw new DuplicateTrackException("The current queue contains a duplicate track!");
+            }
+            if (QUEUE_LIMIT <= this.queue.size()) {
+                throw new QueueFullException(String.format(
+                        "Queue full (size: %s)! Please empty some slots in the queue before you enqueue new songs.",
+                        this.queue.size()));
+            }
+
+            toStartPlaying = this.queue.isEmpty();
+            this.queue.add(entry);
+        }
         if (toStartPlaying) {
-            this.playTrack(entry.getTrack());
+            this.playTrack(entry);
         }
     }
 
@@ -106,25 +128,33 @@ public class TrackScheduler extends AudioEventAdapter {
      * Does NOT remove the current song.
      */
     void purgeWaitingQueue() {
-        if (this.queue.isEmpty() || this.queue.size() == 1) {
-            return;
-        }
+        synchronized (this.queue) {
+            if (this.queue.isEmpty() || this.queue.size() == 1) {
+                return;
+            }
 
-        QueueEntry first = this.queue.poll();
-        this.queue.clear();
-        this.queue.add(first);
+            QueueEntry first = this.queue.poll();
+            this.queue.clear();
+            this.queue.add(first);
+        }
     }
 
     void clearQueue() {
-        this.queue.clear();
+        synchronized (this.queue) {
+            this.queue.clear();
+        }
     }
 
     List<QueueEntry> getCurrentQueue() {
-        return new ArrayList<>(this.queue);
+        synchronized (this.queue) {
+            return new ArrayList<>(this.queue);
+        }
     }
 
     long getQueueLength() {
-        return this.queue.stream().mapToLong(q -> q.getTrack().getDuration()).sum();
+        synchronized (this.queue) {
+            return this.queue.stream().mapToLong(q -> q.getTrack().getDuration()).sum();
+        }
     }
 
     @Override
@@ -134,7 +164,11 @@ public class TrackScheduler extends AudioEventAdapter {
         }
 
         MusicSetting setting = this.gateway.getSetting();
-        User user = queue.peek() != null ? this.gateway.getUser(queue.peek().getUserId()) : null;
+        QueueEntry current;
+        synchronized (this.queue) {
+            current = this.queue.peek();
+        }
+        User user = current != null ? this.gateway.getUser(current.getUserId()) : null;
 
         boolean showPosition = track.getPosition() > TimeUnit.SECONDS.toMillis(1);
 
@@ -154,20 +188,25 @@ public class TrackScheduler extends AudioEventAdapter {
             return;
         }
 
-        // Get the finished track
-        QueueEntry entry = this.queue.poll();
-        if (entry == null) {
-            // indicates the queue has been cleared by other means
-            return;
-        }
+        // resolved outside the lock, as looking up the cache may take a while
+        AudioTrack copy = isRequeued(false) ? copyTrack(track) : null;
+        QueueEntry next;
+        synchronized (this.queue) {
+            // Get the finished track
+            QueueEntry entry = this.queue.poll();
+            if (entry == null) {
+                // indicates the queue has been cleared by other means
+                return;
+            }
 
-        // Get the next track depending on the repeat state
-        QueueEntry next = getQueueEntry(track, false, entry);
+            // Get the next track depending on the repeat state
+            next = getQueueEntry(track, copy, false, entry);
+        }
         if (next == null) {
             this.sendEmptyQueueMessage();
             return;
         }
-        playTrack(next.getTrack());
+        playTrack(next);
     }
 
     /**
@@ -175,32 +214,61 @@ public class TrackScheduler extends AudioEventAdapter {
      * @param amount Amount.
      */
     void skip(int amount) {
+        // resolved outside the lock, as looking up the cache may take a while
+        Map<QueueEntry, AudioTrack> copies = new IdentityHashMap<>();
+        if (isRequeued(true)) {
+            List<QueueEntry> skipped;
+            synchronized (this.queue) {
+                skipped = this.queue.stream().limit(amount).collect(Collectors.toList());
+            }
+            for (QueueEntry entry : skipped) {
+                copies.put(entry, copyTrack(entry.getTrack()));
+            }
+        }
+
         QueueEntry next = null;
-        for (int i = 0; i < amount; i++) {
-            QueueEntry prev = this.queue.poll();
-            if (prev == null) {
-                this.sendEmptyQueueMessage();
-                return;
+        synchronized (this.queue) {
+            for (int i = 0; i < amount; i++) {
+                QueueEntry prev = this.queue.poll();
+                if (prev == null) {
+                    next = null;
+                    break;
+                }
+                next = getQueueEntry(prev.getTrack(), copies.get(prev), true, prev);
             }
-            next = getQueueEntry(prev.getTrack(), true, prev);
         }
         if (next == null) {
             this.sendEmptyQueueMessage();
             return;
         }
-        playTrack(next.getTrack());
+        playTrack(next);
+    }
+
+    /**
+     * Whether the finished track goes back into the queue in the current repeat state.
+     * @param isManualSkip {@code true} if manual skip.
+     * @return {@code true} if a copy of the finished track is needed.
+     */
+    private boolean isRequeued(boolean isManualSkip) {
+        return switch (this.gateway.getSetting().getRepeat()) {
+            case ONE -> !isManualSkip;
+            case QUEUE, RANDOM_REPEAT -> true;
+            default -> false;
+        };
     }
 
     /**
      * Retrieves the next track depending on the repeat state.
-     * If repeating, re-enqueues (and shuffles) inside this.
+     * If repeating, re-enqueues (and shuffles) inside this. To be called with the queue locked.
      * @param finishedTrack Finished track.
+     * @param copy Copy of the finished track from {@link #copyTrack(AudioTrack)}, resolved before locking the queue,
+     *             or {@code null} to clone it.
      * @param isManualSkip {@code true} if manual skip.
      * @param track Finished track.
      * @return Next track.
      */
     @Nullable
-    private QueueEntry getQueueEntry(AudioTrack finishedTrack, boolean isManualSkip, QueueEntry track) {
+    private QueueEntry getQueueEntry(AudioTrack finishedTrack, @Nullable AudioTrack copy, boolean isManualSkip, QueueEntry track) {
         switch (this.gateway.getSetting().getRepeat()) {
             case OFF:
                 break;
@@ -208,13 +276,13 @@ public class TrackScheduler extends AudioEventAdapter {
                 // If this was a manual skip (or an unexpected finish), forcefully skip to the next track
                 if (!isManualSkip) {
                     // Re-add the cloned track
-                    QueueEntry newEntry = new QueueEntry(finishedTrack.makeClone(), track.getUserId());
+                    QueueEntry newEntry = new QueueEntry(copy != null ? copy : finishedTrack.makeClone(), track.getUserId());
                     this.queue.addFirst(newEntry);
                 }
                 break;
             case QUEUE:
                 // Re-add the cloned track
-                QueueEntry newEntry = new QueueEntry(finishedTrack.makeClone(), track.getUserId());
+                QueueEntry newEntry = new QueueEntry(copy != null ? copy : finishedTrack.makeClone(), track.getUserId());
                 this.queue.add(newEntry);
                 break;
             case RANDOM:
@@ -222,7 +290,7 @@ public class TrackScheduler extends AudioEventAdapter {
                 break;
             case RANDOM_REPEAT:
                 // Re-add the cloned track
-                newEntry = new QueueEntry(finishedTrack.makeClone(), track.getUserId());
+                newEntry = new QueueEntry(copy != null ? copy : finishedTrack.makeClone(), track.getUserId());
                 this.queue.add(newEntry);
                 shuffleQueue();
                 break;
@@ -230,8 +298,54 @@ public class TrackScheduler extends AudioEventAdapter {
         return queue.peek();
     }
 
-    private void playTrack(@NotNull AudioTrack track) {
-        this.gateway.playTrack(track);
+    /**
+     * Makes a copy of the finished track to play it again, from the local cache if possible.
+     * @param track Finished track.
+     * @return Copy of the track.
+     */
+    private AudioTrack copyTrack(AudioTrack track) {
+        AudioTrack cached = this.gateway.getCachedTrack(track);
+        return cached != null ? cached : track.makeClone();
+    }
+
+    /**
+     * Retrieves the track that plays after the current one if it ends normally, depending on the repeat state.
+     * Does not modify the queue, so that the next track can be preloaded before the current one ends.
+     * @return Next track, or the current track if it is going to be repeated. {@code null} if the queue ends.
+     */
+    @Nullable
+    public AudioTrack peekNextTrack() {
+        AudioTrack current;
+        AudioTrack following;
+        synchronized (this.queue) {
+            Iterator<QueueEntry> it = this.queue.iterator();
+            if (!it.hasNext()) {
+                return null;
+            }
+            current = it.next().getTrack();
+            following = it.hasNext() ? it.next().getTrack() : null;
+        }
+        RepeatState repeat = this.gateway.getSetting().getRepeat();
+        if (repeat == RepeatState.ONE) {
+            return current;
+        }
+        // random modes shuffle only the tracks after the next one
+        if (following != null) {
+            return following;
+        }
+        return repeat == RepeatState.QUEUE || repeat == RepeatState.RANDOM_REPEAT ? current : null;
+    }
+
+    private void playTrack(@NotNull QueueEntry entry) {
+        AudioTrack started = this.gateway.playTrack(entry.getTrack());
+        if (started == entry.getTrack()) return;
+        synchronized (this.queue) {
+            if (this.queue.peek() == entry) {
+                // the preloaded copy was started, refer to it so that seeking applies to the playing track
+                this.queue.poll();
+                this.queue.addFirst(new QueueEntry(started, entry.getUserId()));
+            }
+        }
     }
 
     @Override
@@ -0,0 +1,63 @@
+package music.cache;
+
+import com.sedmelluq.discord.lavaplayer.container.common.OpusPacketRouter;
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import com.sedmelluq.discord.lavaplayer.track.BaseAudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.LocalAudioTrackExecutor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Track played from the frames stored in the {@link OpusFrameCache}, without any network access.
+ * Frames are passed through to the player untouched when the format matches its output, and transcoded otherwise.
+ */
+public class CachedOpusAudioTrack extends BaseAudioTrack {
+    private final OpusFrameCache.Entry entry;
+    // next frame to read, moved by seeks
+    private volatile int frame;
+
+    CachedOpusAudioTrack(AudioTrackInfo trackInfo, OpusFrameCache.Entry entry) {
+        super(trackInfo);
+        this.entry = entry;
+    }
+
+    /**
+     * Checks if the cached frames are in the given format, so that a player with this output format passes them through.
+     * @param format Output format of the player.
+     * @return {@code true} if the format matches.
+     */
+    public boolean hasFormat(AudioDataFormat format) {
+        return "OPUS".equals(format.codecName()) && format.channelCount == this.entry.channelCount()
+                && format.sampleRate == this.entry.sampleRate()
+                && format.chunkSampleCount == this.entry.sampleRate() / 1000 * this.entry.frameMillis();
+    }
+
+    @Override
+    public void process(LocalAudioTrackExecutor executor) throws Exception {
+        OpusPacketRouter router = new OpusPacketRouter(executor.getProcessingContext(),
+                this.entry.sampleRate(), this.entry.channelCount());
+        ByteBuffer view = this.entry.view();
+        try {
+            executor.executeProcessingLoop(() -> {
+                while (this.frame < this.entry.frames()) {
+                    router.process(this.entry.frame(view, this.frame));
+                    this.frame++;
+                }
+                router.flush();
+            }, position -> {
+                // frames have a fixed duration, so no index lookup nor network access is needed
+                this.frame = this.entry.frameAt(position);
+                router.seekPerformed(position, this.entry.timecodeOf(this.frame));
+            });
+        } finally {
+            router.close();
+        }
+    }
+
+    @Override
+    protected AudioTrack makeShallowClone() {
+        return new CachedOpusAudioTrack(this.trackInfo, this.entry);
+    }
+}
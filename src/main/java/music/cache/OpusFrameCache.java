@@ -0,0 +1,303 @@
+package music.cache;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static utils.EnvConfig.envLong;
+
+/**
+ * Local cache of the encoded Opus frames of played tracks, keyed by track URI and player output configuration.
+ * Frames are recorded while a track is played for the first time, and written into one memory-mapped file per track.
+ * Frames are encoded for the output format of the player that recorded them, so players with another format
+ * or encoder setting record their own copy.
+ * Later plays of the track, in repeat modes or from other channels, read the frames from the file
+ * instead of fetching and decoding the source again.
+ * The least recently used tracks are evicted when the total size exceeds the budget.
+ */
+public class OpusFrameCache {
+    private static final String FILE_SUFFIX = ".opus-frames";
+    // tracks longer than this are not recorded, to bound the disk space used by one recording
+    private static final long MAX_TRACK_MILLIS = TimeUnit.MINUTES.toMillis(20);
+
+    private final Path dir;
+    private final long maxBytes;
+    // in access order, eldest first
+    private final LinkedHashMap<String, Entry> entries;
+    private final Set<String> recording;
+    private final ExecutorService writer;
+    private long totalBytes;
+    private long fileCount;
+
+    /**
+     * Frames of one cached track.
+     * Every frame has the same duration, so the frame at any position is found without a lookup.
+     */
+    static final class Entry {
+        private final Path file;
+        private final MappedByteBuffer data;
+        // start of each frame in the file, followed by the end of the last frame
+        private final int[] offsets;
+        private final int sampleRate;
+        private final int channelCount;
+        private final int frameMillis;
+
+        private Entry(Path file, MappedByteBuffer data, int[] offsets, int sampleRate, int channelCount, int frameMillis) {
+            this.file = file;
+            this.data = data;
+            this.offsets = offsets;
+            this.sampleRate = sampleRate;
+            this.channelCount = channelCount;
+            this.frameMillis = frameMillis;
+        }
+
+        int frames() {
+            return this.offsets.length - 1;
+        }
+
+        int sampleRate() {
+            return this.sampleRate;
+        }
+
+        int frameMillis() {
+            return this.frameMillis;
+        }
+
+        int channelCount() {
+            return this.channelCount;
+        }
+
+        /**
+         * Retrieves the index of the frame containing the given position.
+         * @param position Position in milliseconds.
+         * @return Frame index.
+         */
+        int frameAt(long position) {
+            return (int) Math.max(0, Math.min(frames(), position / this.frameMillis));
+        }
+
+        long timecodeOf(int frame) {
+            return (long) frame * this.frameMillis;
+        }
+
+        /**
+         * Creates a view of the file, to read frames with {@link #frame(ByteBuffer, int)}.
+         * @return Read-only view.
+         */
+        ByteBuffer view() {
+            return this.data.asReadOnlyBuffer();
+        }
+
+        /**
+         * Points the given view at a frame.
+         * @param view View from {@link #view()}.
+         * @param frame Frame index.
+         * @return The view.
+         */
+        ByteBuffer frame(ByteBuffer view, int frame) {
+            view.clear();
+            view.limit(this.offsets[frame + 1]).position(this.offsets[frame]);
+            return view;
+        }
+
+        long size() {
+            return this.offsets[this.offsets.length - 1];
+        }
+    }
+
+    public OpusFrameCache() {
+        this.dir = Paths.get(System.getenv().getOrDefault("MUSIC_CACHE_DIR", "opus-cache"));
+        this.maxBytes = envLong("MUSIC_CACHE_MAX_MB", 512) * 1024 * 1024;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+        this.recording = new HashSet<>();
+        this.writer = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "opus-frame-cache-writer");
+            t.setDaemon(true);
+            return t;
+        });
+        if (this.isEnabled()) {
+            prepareDirectory();
+        }
+    }
+
+    public boolean isEnabled() {
+        return this.maxBytes > 0;
+    }
+
+    /**
+     * Creates the cache directory, and deletes the files left from the last run, whose index is lost.
+     */
+    private void prepareDirectory() {
+        try {
+            Files.createDirectories(this.dir);
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(this.dir, "*" + FILE_SUFFIX)) {
+                for (Path file : files) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String keyOf(AudioTrack track, AudioConfiguration configuration) {
+        String uri = track.getInfo().uri;
+        AudioDataFormat format = configuration.getOutputFormat();
+        // non-Opus sources are encoded by the player, so the encoder settings make a difference as well
+        return String.format("%s|%s/%s/%s/%s|%s/%s", uri != null ? uri : track.getIdentifier(),
+                format.codecName(), format.channelCount, format.sampleRate, format.chunkSampleCount,
+                configuration.getResamplingQuality(), configuration.getOpusEncodingQuality());
+    }
+
+    /**
+     * Retrieves a copy of the track that plays from the cache, starting from the beginning.
+     * @param track Track.
+     * @param configuration Configuration of the player manager the track is to be played with.
+     * @return Cached track, or {@code null} if the track is not cached for this configuration.
+     */
+    @Nullable
+    public synchronized AudioTrack getCachedTrack(@NotNull AudioTrack track, @NotNull AudioConfiguration configuration) {
+        Entry entry = this.entries.get(keyOf(track, configuration));
+        if (entry == null) {
+            return null;
+        }
+        return new CachedOpusAudioTrack(track.getInfo(), entry);
+    }
+
+    /**
+     * Starts recording the frames of a track, if it should be cached.
+     * @param track Track about to be played from the beginning.
+     * @param configuration Configuration of the player manager the track is played with.
+     * @return Recorder, or {@code null} if the track is not to be recorded.
+     */
+    @Nullable
+    public synchronized OpusFrameRecorder startRecording(@NotNull AudioTrack track, @NotNull AudioConfiguration configuration) {
+        if (!this.isEnabled() || track instanceof CachedOpusAudioTrack) {
+            return null;
+        }
+        if (track.getInfo().isStream || track.getDuration() > MAX_TRACK_MILLIS) {
+            return null;
+        }
+        String key = keyOf(track, configuration);
+        if (this.entries.containsKey(key) || !this.recording.add(key)) {
+            return null;
+        }
+        Path file = this.dir.resolve(++this.fileCount + FILE_SUFFIX);
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            this.recording.remove(key);
+            return null;
+        }
+        return new OpusFrameRecorder(this, key, file, channel);
+    }
+
+    /**
+     * Appends recorded frames to the file of a recording in the background.
+     */
+    void writeChunk(FileChannel channel, byte[] chunk, int length) {
+        this.writer.execute(() -> {
+            try {
+                ByteBuffer src = ByteBuffer.wrap(chunk, 0, length);
+                while (src.hasRemaining()) {
+                    channel.write(src);
+                }
+            } catch (IOException e) {
+                // the size check in store() drops the recording
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * Deletes the file of an abandoned recording in the background, after the chunks already queued.
+     */
+    void abandon(String key, Path file, FileChannel channel) {
+        this.writer.execute(() -> {
+            close(channel);
+            delete(file);
+            synchronized (this) {
+                this.recording.remove(key);
+            }
+        });
+    }
+
+    /**
+     * Maps the file of a finished recording in the background, after the chunks already queued, and adds it to the cache.
+     */
+    void store(String key, Path file, FileChannel channel, int[] offsets, int sampleRate, int channelCount, int frameMillis) {
+        this.writer.execute(() -> {
+            Entry entry = null;
+            int size = offsets[offsets.length - 1];
+            try {
+                if (channel.size() == size) {
+                    // the mapping stays valid after the channel is closed
+                    MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    entry = new Entry(file, mapped, offsets, sampleRate, channelCount, frameMillis);
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            close(channel);
+            if (entry == null) {
+                delete(file);
+            }
+            synchronized (this) {
+                this.recording.remove(key);
+                if (entry == null) return;
+                this.entries.put(key, entry);
+                this.totalBytes += entry.size();
+                evict();
+            }
+        });
+    }
+
+    private static void close(FileChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Deletes the least recently used tracks until the total size fits in the budget.
+     * Tracks being played keep their mapping, so the files can be deleted right away.
+     */
+    private void evict() {
+        Iterator<Entry> it = this.entries.values().iterator();
+        while (this.totalBytes > this.maxBytes && it.hasNext()) {
+            Entry eldest = it.next();
+            it.remove();
+            this.totalBytes -= eldest.size();
+            delete(eldest.file);
+        }
+    }
+}
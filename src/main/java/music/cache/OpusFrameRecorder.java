@@ -0,0 +1,115 @@
+package music.cache;
+
+import com.sedmelluq.discord.lavaplayer.format.AudioDataFormat;
+import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Records the frames of one track as they are played, to be stored in the {@link OpusFrameCache}.
+ * Frames are collected into small chunks, which are written to the file of the track in the background as they fill up,
+ * so that only the frame offsets of the track are kept in memory.
+ * The recording is abandoned if the frames are not contiguous, e.g. after a seek,
+ * or if they are not plain Opus frames of the source.
+ */
+public class OpusFrameRecorder {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final OpusFrameCache cache;
+    private final String key;
+    private final Path file;
+    private final FileChannel channel;
+    private byte[] chunk;
+    // bytes in the current chunk
+    private int chunkSize;
+    // bytes recorded so far, including the current chunk
+    private int size;
+    private int[] offsets;
+    private int frames;
+    private AudioDataFormat format;
+    private int frameMillis;
+    // aborted from command threads while frames are appended on the pacing thread, so all of the state is guarded by this
+    private boolean closed;
+
+    OpusFrameRecorder(OpusFrameCache cache, String key, Path file, FileChannel channel) {
+        this.cache = cache;
+        this.key = key;
+        this.file = file;
+        this.channel = channel;
+        this.chunk = new byte[CHUNK_SIZE];
+        this.offsets = new int[1024];
+    }
+
+    /**
+     * Appends a frame.
+     * @param frame Frame provided by the player.
+     * @return {@code false} if the recording has been abandoned.
+     */
+    public synchronized boolean append(AudioFrame frame) {
+        if (this.closed) return false;
+
+        AudioDataFormat format = frame.getFormat();
+        if (this.format == null) {
+            this.format = format;
+            this.frameMillis = (int) (1000L * format.chunkSampleCount / format.sampleRate);
+        }
+        long expectedTimecode = (long) this.frames * this.frameMillis;
+        if (!"OPUS".equals(format.codecName()) || !format.equals(this.format) || frame.getVolume() != 100
+                || Math.abs(frame.getTimecode() - expectedTimecode) > this.frameMillis) {
+            abort();
+            return false;
+        }
+
+        int length = frame.getDataLength();
+        if (this.chunkSize + length > this.chunk.length) {
+            flushChunk();
+            if (length > this.chunk.length) {
+                this.chunk = new byte[length];
+            }
+        }
+        if (this.frames + 1 >= this.offsets.length) {
+            this.offsets = Arrays.copyOf(this.offsets, this.offsets.length * 2);
+        }
+        frame.getData(this.chunk, this.chunkSize);
+        this.chunkSize += length;
+        this.offsets[this.frames++] = this.size;
+        this.size += length;
+        return true;
+    }
+
+    private void flushChunk() {
+        if (this.chunkSize == 0) return;
+        // the chunk is handed over to the writer, so frames go on into a new one
+        this.cache.writeChunk(this.channel, this.chunk, this.chunkSize);
+        this.chunk = new byte[CHUNK_SIZE];
+        this.chunkSize = 0;
+    }
+
+    /**
+     * Stores the recording, after the track has played to the end.
+     */
+    public synchronized void finish() {
+        if (this.closed) return;
+        this.closed = true;
+        if (this.frames == 0) {
+            this.cache.abandon(this.key, this.file, this.channel);
+            return;
+        }
+        flushChunk();
+        this.chunk = null;
+        this.offsets[this.frames] = this.size;
+        this.cache.store(this.key, this.file, this.channel, Arrays.copyOf(this.offsets, this.frames + 1),
+                this.format.sampleRate, this.format.channelCount, this.frameMillis);
+    }
+
+    /**
+     * Discards the recording.
+     */
+    public synchronized void abort() {
+        if (this.closed) return;
+        this.closed = true;
+        this.cache.abandon(this.key, this.file, this.channel);
+    }
+}
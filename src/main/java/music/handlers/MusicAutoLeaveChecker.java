@@ -1,6 +1,7 @@
 package music.handlers;
 
 import api.TraqApi;
+import api.WebRTCStateSnapshot;
 import app.App;
 import com.github.motoki317.traq4j.model.WebRTCUserState;
 import db.model.musicInterruptedChannel.MusicInterruptedChannel;
@@ -48,13 +49,13 @@ public class MusicAutoLeaveChecker {
             return true;
         }
 
-        List<WebRTCUserState> states = this.traqApi.getWebRTCState();
-        if (states == null) {
+        // a single request serves the whole check of all channels
+        WebRTCStateSnapshot snapshot = this.traqApi.getWebRTCStateSnapshot();
+        if (snapshot == null) {
             return false;
         }
         int listeningCount = 0;
-        for (WebRTCUserState rtcState : states) {
-            if (!rtcState.getChannelId().equals(vcId)) continue;
+        for (WebRTCUserState rtcState : snapshot.getChannelStates(vcId)) {
             if (rtcState.getUserId().toString().equals(this.botUserId)) continue;
             listeningCount++;
         }
@@ -7,10 +7,14 @@ import com.github.motoki317.traq4j.model.User;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
+import http.MusicServer;
+import http.StreamStats;
 import music.*;
+import skyway.SkywayApi;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
 
 import static commands.BotCommand.respond;
 import static music.MusicUtils.formatLength;
@@ -18,9 +22,13 @@ import static music.MusicUtils.parseLength;
 
 public class MusicManagementHandler {
     private final TraqApi traqApi;
+    private final MusicServer musicServer;
+    private final SkywayApi skywayApi;
 
     public MusicManagementHandler(App app) {
         this.traqApi = app.getTraqApi();
+        this.musicServer = app.getMusicServer();
+        this.skywayApi = app.getSkywayApi();
     }
 
     /**
@@ -259,4 +267,31 @@ public class MusicManagementHandler {
         state.purgeWaitingQueue();
         respond(res, "Purged the queue.");
     }
+
+    /**
+     * Handles "stats" command.
+     * @param res Responder.
+     * @param vcId Voice channel ID.
+     * @param state Music state.
+     */
+    public void handleStats(Responder res, UUID vcId, MusicState state) {
+        StreamStats stats = this.musicServer.getStats(vcId);
+        if (stats == null) {
+            respond(res, "The audio stream for this channel has not started yet.");
+            return;
+        }
+
+        List<String> ret = new ArrayList<>();
+        ret.add("Audio Stream Stats");
+        ret.addAll(stats.format());
+        int sharing = state.getPlayer().getSimulcastSubscribers();
+        if (sharing > 0) {
+            ret.add(String.format("Simulcast: decoding shared with %s channel(s)", sharing));
+        }
+        int restarts = this.skywayApi.getBrowserRestarts(vcId);
+        if (restarts > 0) {
+            ret.add(String.format("Browser restarts: %s", restarts));
+        }
+        respond(res, String.join("\n", ret));
+    }
 }
@@ -8,7 +8,6 @@ import com.github.motoki317.traq4j.model.User;
 import com.github.motoki317.traq_ws_bot.WebRTCState;
 import com.github.motoki317.traq_ws_bot.model.MessageCreatedEvent;
 import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
-import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
@@ -23,6 +22,7 @@ import db.repository.base.MusicSettingRepository;
 import http.MusicServer;
 import log.Logger;
 import music.*;
+import music.cache.OpusFrameCache;
 import music.exception.DuplicateTrackException;
 import music.exception.QueueFullException;
 import org.apache.commons.lang.RandomStringUtils;
@@ -36,6 +36,7 @@ import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import static commands.BotCommand.respond;
@@ -45,10 +46,21 @@ import static music.MusicUtils.getVoiceChannelByID;
 
 public class MusicPlayHandler {
     private static final UUID NullUUID = UUID.fromString("00000000-0000-0000-0000-000000000000");
+    private static final int CONNECT_LOCK_STRIPES = 64;
 
     // Channel UUID to Music State
     private final Map<String, MusicState> states;
+    // Locks held while setting up a channel, striped by channel UUID, so that joins of different channels rarely wait
+    // for each other and no entry is left behind for every channel ever joined
+    private final Object[] connectLocks;
+    // used to load tracks
     private final AudioPlayerManager playerManager;
+    // used to create players with the output format of each quality profile
+    private final Map<AudioQualityProfile, AudioPlayerManager> playerManagers;
+    // encoded frames of played tracks, shared by all channels
+    private final OpusFrameCache frameCache;
+    // pipelines of live streams, shared by all channels
+    private final SimulcastHub simulcastHub;
     private final String botUserId;
 
     private final App app;
@@ -61,9 +73,17 @@ public class MusicPlayHandler {
     private final MusicInterruptedChannelRepository interruptedGuildRepository;
     private final ResponseManager responseManager;
 
-    public MusicPlayHandler(App app, Map<String, MusicState> states, AudioPlayerManager playerManager) {
+    public MusicPlayHandler(App app, Map<String, MusicState> states, Map<AudioQualityProfile, AudioPlayerManager> playerManagers,
+                            OpusFrameCache frameCache, SimulcastHub simulcastHub) {
         this.states = states;
-        this.playerManager = playerManager;
+        this.connectLocks = new Object[CONNECT_LOCK_STRIPES];
+        for (int i = 0; i < CONNECT_LOCK_STRIPES; i++) {
+            this.connectLocks[i] = new Object();
+        }
+        this.playerManager = playerManagers.get(AudioQualityProfile.STANDARD);
+        this.playerManagers = playerManagers;
+        this.frameCache = frameCache;
+        this.simulcastHub = simulcastHub;
         this.botUserId = System.getenv("BOT_USER_ID");
         this.app = app;
         this.musicServer = app.getMusicServer();
@@ -114,21 +134,75 @@ public class MusicPlayHandler {
 
         for (MusicInterruptedChannel channel : channels) {
             UUID vcId = UUID.fromString(channel.getVcId());
+            long start = System.nanoTime();
             MusicState state = prepareMusicState(vcId, UUID.fromString(channel.getTextChannelId()));
+            QallState qs = getVoiceChannelByID(traqApi, vcId);
+            join(vcId, state, qs == null ? "" : qs.sessionId(), start);
+        }
+    }
 
-            // setup music server
-            String next = this.musicServer.serve(
-                    this.botUserId,
-                    state.getPlayer(),
-                    vcId
-            );
-            // connect with skyway
-            this.skywayApi.joinChannel(next, vcId);
+    /**
+     * Registers the stream of the channel, and joins the channel in the background.
+     * Each stage is timed, and the music state is discarded if the join fails.
+     *
+     * @param vcId      Voice channel ID.
+     * @param state     Music state, prepared for the channel.
+     * @param sessionId Qall session ID. Empty string to start a new session.
+     * @param start     Time the join started, in {@link System#nanoTime()}.
+     * @return Future completed once the channel is joined.
+     */
+    private CompletableFuture<Void> join(UUID vcId, MusicState state, String sessionId, long start) {
+        long prepared = System.nanoTime();
+        // setup music server
+        String next = this.musicServer.serve(
+                this.botUserId,
+                state.getPlayer(),
+                vcId,
+                state.getSetting().getVolume()
+        );
+        long registered = System.nanoTime();
+
+        // connect with skyway
+        return this.skywayApi.joinChannel(next, vcId).thenRun(() -> {
+            long joined = System.nanoTime();
             // Sync WebRTC state with traQ server
-            QallState qs = getVoiceChannelByID(traqApi, vcId);
-            String sessionId = qs == null || qs.sessionId().equals("") ? newQallSessionId() : qs.sessionId();
-            this.app.sendWebRTCState(vcId.toString(), new WebRTCState("joined", sessionId));
+            this.app.sendWebRTCState(vcId.toString(),
+                    new WebRTCState("joined", sessionId.equals("") ? newQallSessionId() : sessionId));
+            long end = System.nanoTime();
+            this.logger.log(String.format("Joined voice channel %s in %s ms " +
+                            "(prepare state %s ms, register stream %s ms, browser %s ms, send WebRTC state %s ms)",
+                    vcId, TimeUnit.NANOSECONDS.toMillis(end - start),
+                    TimeUnit.NANOSECONDS.toMillis(prepared - start),
+                    TimeUnit.NANOSECONDS.toMillis(registered - prepared),
+                    TimeUnit.NANOSECONDS.toMillis(joined - registered),
+                    TimeUnit.NANOSECONDS.toMillis(end - joined)));
+        }).whenComplete((v, e) -> {
+            if (e != null) {
+                abandonJoin(vcId, state);
+            }
+        });
+    }
+
+    /**
+     * Discards the music state of a channel that could not be joined.
+     *
+     * @param vcId  Voice channel ID.
+     * @param state Music state.
+     */
+    private void abandonJoin(UUID vcId, MusicState state) {
+        synchronized (states) {
+            // already left, or joined again since
+            if (!states.remove(vcId.toString(), state)) {
+                return;
+            }
         }
+        state.stopLoadingCache();
+        state.stopPlaying();
+        state.getPlayer().destroy();
+        this.musicServer.stop(vcId);
+        this.skywayApi.close(vcId);
+        respond(this.traqApi, UUID.fromString(state.getTextChannelId()),
+                "Failed to connect to the voice channel, please try again.");
     }
 
     /**
@@ -144,8 +218,7 @@ public class MusicPlayHandler {
         MusicSetting setting = getSetting(vcId.toString());
         TraqApi traqApi = this.traqApi;
 
-        AudioPlayer player = playerManager.createPlayer();
-        player.setVolume(setting.getVolume());
+        GaplessAudioPlayer player = new GaplessAudioPlayer(this.playerManagers.get(setting.getQuality()), this.frameCache, this.simulcastHub);
 
         TrackScheduler scheduler = new TrackScheduler(new TrackScheduler.SchedulerGateway() {
             @Override
@@ -176,11 +249,18 @@ public class MusicPlayHandler {
             }
 
             @Override
-            public void playTrack(AudioTrack track) {
-                player.playTrack(track);
+            public AudioTrack playTrack(AudioTrack track) {
+                return player.playTrackOrPreloaded(track);
+            }
+
+            @Nullable
+            @Override
+            public AudioTrack getCachedTrack(AudioTrack track) {
+                return player.getCachedTrack(track);
             }
         });
         player.addListener(scheduler);
+        player.setNextTrackSource(scheduler::peekNextTrack);
 
         MusicState state = new MusicState(player, scheduler, setting, vcId.toString(), textChannelId.toString());
         synchronized (states) {
@@ -301,32 +381,25 @@ public class MusicPlayHandler {
      * Tries to connect to the VC the user is in.
      *
      * @param event Event.
-     * @return {@code true} if success.
+     * @param qs    Voice channel the user is in, null if not in any.
+     * @return Future completed once the channel is joined. null if failed.
      */
-    private boolean connect(MessageCreatedEvent event) {
-        QallState qs = getVoiceChannel(UUID.fromString(event.message().user().id()));
+    @Nullable
+    private CompletableFuture<Void> connect(MessageCreatedEvent event, @Nullable QallState qs) {
         if (qs == null) {
             respond(this.traqApi, event,
                     "Please join in a voice channel before you use this command!");
-            return false;
+            return null;
         }
 
         // Prepare whole music logic state
+        long start = System.nanoTime();
         MusicState state = prepareMusicState(qs.channelId(), UUID.fromString(event.message().channelId()));
+        return join(qs.channelId(), state, qs.sessionId(), start);
+    }
 
-        // setup music player
-        String next = this.musicServer.serve(
-                this.botUserId,
-                state.getPlayer(),
-                qs.channelId()
-        );
-        // connect with skyway
-        this.skywayApi.joinChannel(next, qs.channelId());
-        // Sync WebRTC state with traQ server
-        String sessionId = qs.sessionId().equals("") ? newQallSessionId() : qs.sessionId();
-        this.app.sendWebRTCState(qs.channelId().toString(), new WebRTCState("joined", sessionId));
-
-        return true;
+    private Object getConnectLock(UUID vcId) {
+        return this.connectLocks[Math.floorMod(vcId.hashCode(), CONNECT_LOCK_STRIPES)];
     }
 
     /**
@@ -351,16 +424,20 @@ public class MusicPlayHandler {
             return null;
         }
 
-        synchronized (states) {
-            MusicState state = states.getOrDefault(qs.channelId().toString(), null);
-            if (state != null) {
-                return state;
+        // the channel is usable as soon as the state is prepared, while the browser joins in the background
+        synchronized (getConnectLock(qs.channelId())) {
+            synchronized (states) {
+                MusicState state = states.getOrDefault(qs.channelId().toString(), null);
+                if (state != null) {
+                    return state;
+                }
             }
-            boolean res = connect(event);
-            if (!res) {
+            if (connect(event, qs) == null) {
                 return null;
             }
-            return states.get(qs.channelId().toString());
+            synchronized (states) {
+                return states.get(qs.channelId().toString());
+            }
         }
     }
 
@@ -377,11 +454,24 @@ public class MusicPlayHandler {
             }
         }
 
-        if (!connect(event)) {
+        QallState qs = getVoiceChannel(UUID.fromString(event.message().user().id()));
+        if (qs == null) {
+            connect(event, null);
             return;
         }
 
-        respond(res, "Successfully connected to your voice channel!");
+        CompletableFuture<Void> join;
+        synchronized (getConnectLock(qs.channelId())) {
+            synchronized (states) {
+                if (states.containsKey(qs.channelId().toString())) {
+                    respond(this.traqApi, event, "This channel already has a music player set up!");
+                    return;
+                }
+            }
+            join = connect(event, qs);
+        }
+
+        join.thenRun(() -> respond(res, "Successfully connected to your voice channel!"));
     }
 
     /**
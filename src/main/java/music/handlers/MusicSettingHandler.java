@@ -6,6 +6,8 @@ import app.Responder;
 import com.github.motoki317.traq_ws_bot.model.MessageCreatedEvent;
 import db.model.musicSetting.MusicSetting;
 import db.repository.base.MusicSettingRepository;
+import http.MusicServer;
+import music.AudioQualityProfile;
 import music.MusicState;
 import music.MusicUtils;
 import music.QallState;
@@ -27,11 +29,13 @@ public class MusicSettingHandler {
     private final Map<String, MusicState> states;
 
     private final TraqApi traqApi;
+    private final MusicServer musicServer;
     private final MusicSettingRepository musicSettingRepository;
 
     public MusicSettingHandler(App app, Map<String, MusicState> states) {
         this.states = states;
         this.traqApi = app.getTraqApi();
+        this.musicServer = app.getMusicServer();
         this.musicSettingRepository = app.getDatabase().getMusicSettingRepository();
     }
 
@@ -149,7 +153,7 @@ public class MusicSettingHandler {
 
         setting.setVolume(newVolume);
         if (state != null) {
-            state.getPlayer().setVolume(newVolume);
+            this.musicServer.setVolume(vcId, newVolume);
         }
 
         if (this.saveSetting(setting)) {
@@ -213,8 +217,13 @@ public class MusicSettingHandler {
 
                         Show Now Playing Messages
                         Current: **%s**
-                        `m setting shownp <ON/OFF>`""",
-                current.isShowNp() ? "ON" : "OFF");
+                        `m setting shownp <ON/OFF>`
+
+                        Audio Quality
+                        Current: **%s**
+                        `m setting quality <profile>`""",
+                current.isShowNp() ? "ON" : "OFF",
+                current.getQuality().name());
     }
 
     public MusicSubCommandHandler handleSetting = retrieveMusicState((event, res, args, vcId, state) -> _handleSetting(res, args, vcId));
@@ -237,6 +246,10 @@ public class MusicSettingHandler {
             handleShowNP(res, setting, args);
             return;
         }
+        if ("quality".equalsIgnoreCase(args[2])) {
+            handleQuality(res, setting, args);
+            return;
+        }
 
         respond(res, "Unknown music setting.");
     }
@@ -280,4 +293,51 @@ public class MusicSettingHandler {
             respondError(res, "Something went wrong while saving setting...");
         }
     }
+
+    private static String qualityHelp(AudioQualityProfile current) {
+        return String.format("""
+                        Music Other Settings - Audio Quality
+                        Trades CPU usage and bandwidth against audio quality.
+                        Changes are applied from the next time the bot joins.
+                        Default: %s
+                        Current: %s
+                        Update: `m setting quality <profile>`
+                        Available Profiles: %s""",
+                AudioQualityProfile.STANDARD.name(),
+                current.name(),
+                Arrays.stream(AudioQualityProfile.values())
+                        .map(q -> String.format("**%s** : %s", q.name(), q.getDescription()))
+                        .collect(Collectors.joining("\n")));
+    }
+
+    /**
+     * Handles "setting quality" command.
+     * @param res Responder.
+     * @param setting Current setting.
+     * @param args Command arguments.
+     */
+    private void handleQuality(Responder res, MusicSetting setting, String[] args) {
+        AudioQualityProfile oldQuality = setting.getQuality();
+        if (args.length <= 3) {
+            respond(res, qualityHelp(oldQuality));
+            return;
+        }
+
+        AudioQualityProfile newQuality;
+        try {
+            newQuality = AudioQualityProfile.valueOf(args[3].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            respond(res, "Invalid audio quality profile.");
+            return;
+        }
+
+        setting.setQuality(newQuality);
+
+        if (this.saveSetting(setting)) {
+            respond(res, String.format("Set audio quality from `%s` to `%s`! It will be applied from the next time the bot joins.",
+                    oldQuality.name(), newQuality.name()));
+        } else {
+            respondError(res, "Something went wrong while saving setting...");
+        }
+    }
 }
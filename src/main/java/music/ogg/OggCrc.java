@@ -0,0 +1,62 @@
+package music.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Ogg page checksum (RFC 3533).
+ * CRC-32 with polynomial 0x04c11db7, non-reflected, zero initial value and no final xor.
+ * Uses slicing-by-8: eight bytes are folded in per step with eight lookup tables,
+ * where {@code TABLES[k][i]} is the CRC of byte {@code i} followed by {@code k} zero bytes.
+ */
+public class OggCrc {
+    private static final int[][] TABLES = new int[8][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int r = i << 24;
+            for (int j = 0; j < 8; j++) {
+                r = (r & 0x80000000) != 0 ? (r << 1) ^ 0x04c11db7 : r << 1;
+            }
+            TABLES[0][i] = r;
+        }
+        for (int k = 1; k < 8; k++) {
+            for (int i = 0; i < 256; i++) {
+                int prev = TABLES[k - 1][i];
+                TABLES[k][i] = (prev << 8) ^ TABLES[0][prev >>> 24];
+            }
+        }
+    }
+
+    private OggCrc() {}
+
+    /**
+     * Calculates the checksum of the given buffer range, without modifying its position.
+     * @param buf Buffer.
+     * @param from Start index (inclusive).
+     * @param to End index (exclusive).
+     * @return Checksum.
+     */
+    public static int checksum(ByteBuffer buf, int from, int to) {
+        int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+        int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+        boolean littleEndian = buf.order() == ByteOrder.LITTLE_ENDIAN;
+
+        int crc = 0;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long v = buf.getLong(i);
+            if (littleEndian) {
+                v = Long.reverseBytes(v);
+            }
+            int hi = crc ^ (int) (v >>> 32);
+            int lo = (int) v;
+            crc = t7[hi >>> 24] ^ t6[(hi >>> 16) & 0xff] ^ t5[(hi >>> 8) & 0xff] ^ t4[hi & 0xff]
+                    ^ t3[lo >>> 24] ^ t2[(lo >>> 16) & 0xff] ^ t1[(lo >>> 8) & 0xff] ^ t0[lo & 0xff];
+        }
+        for (; i < to; i++) {
+            crc = (crc << 8) ^ t0[((crc >>> 24) ^ buf.get(i)) & 0xff];
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,119 @@
+package music.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Assembles Ogg pages (RFC 3533) in place.
+ * Packets are copied into a reusable staging buffer, and the page header, segment table and checksum
+ * are written straight into a reusable direct buffer, so nothing is allocated per packet or per page.
+ * Not thread safe.
+ */
+public class OggPageWriter {
+    public static final int FLAG_BOS = 0x02;
+    public static final int FLAG_EOS = 0x04;
+
+    private static final int HEADER_SIZE = 27;
+    private static final int CHECKSUM_OFFSET = 22;
+    private static final int MAX_SEGMENTS = 255;
+    private static final int MAX_BODY_SIZE = MAX_SEGMENTS * 255;
+
+    private final byte[] segmentTable;
+    private final ByteBuffer body;
+    private final ByteBuffer page;
+    private int segments;
+    private int packets;
+
+    public OggPageWriter() {
+        this.segmentTable = new byte[MAX_SEGMENTS];
+        this.body = ByteBuffer.allocateDirect(MAX_BODY_SIZE);
+        this.page = ByteBuffer.allocateDirect(HEADER_SIZE + MAX_SEGMENTS + MAX_BODY_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Number of packets added to the current page.
+     * @return Packet count.
+     */
+    public int packets() {
+        return this.packets;
+    }
+
+    /**
+     * Checks if a packet of the given length still fits in the current page.
+     * @param length Packet length in bytes.
+     * @return {@code true} if the packet can be added.
+     */
+    public boolean canFit(int length) {
+        return this.segments + length / 255 + 1 <= MAX_SEGMENTS;
+    }
+
+    /**
+     * Adds a whole packet to the current page.
+     * @param data Packet data.
+     * @param offset Offset in data.
+     * @param length Packet length.
+     * @throws IllegalStateException If the packet does not fit in the current page.
+     */
+    public void addPacket(byte[] data, int offset, int length) {
+        addLacing(length);
+        this.body.put(data, offset, length);
+    }
+
+    /**
+     * Adds a whole packet to the current page.
+     * Reads the remaining bytes of the buffer, without modifying its position.
+     * @param data Packet data.
+     * @throws IllegalStateException If the packet does not fit in the current page.
+     */
+    public void addPacket(ByteBuffer data) {
+        addLacing(data.remaining());
+        this.body.put(data.duplicate());
+    }
+
+    private void addLacing(int length) {
+        if (!canFit(length)) {
+            throw new IllegalStateException("Packet of " + length + " bytes does not fit in the current page");
+        }
+        int remaining = length;
+        while (remaining >= 255) {
+            this.segmentTable[this.segments++] = (byte) 255;
+            remaining -= 255;
+        }
+        // A packet whose length is a multiple of 255 is terminated with a zero lacing value
+        this.segmentTable[this.segments++] = (byte) remaining;
+        this.packets++;
+    }
+
+    /**
+     * Writes the current page and starts a new one.
+     * The returned buffer is reused, and is only valid until the next call to this writer.
+     * @param flags Header type flags.
+     * @param granulePosition Granule position.
+     * @param serialNum Bitstream serial number.
+     * @param seqNum Page sequence number.
+     * @return Buffer containing the whole page, positioned at its beginning.
+     */
+    public ByteBuffer finishPage(int flags, long granulePosition, int serialNum, int seqNum) {
+        ByteBuffer page = this.page;
+        page.clear();
+        page.put((byte) 'O').put((byte) 'g').put((byte) 'g').put((byte) 'S');
+        page.put((byte) 0);
+        page.put((byte) flags);
+        page.putLong(granulePosition);
+        page.putInt(serialNum);
+        page.putInt(seqNum);
+        page.putInt(0);
+        page.put((byte) this.segments);
+        page.put(this.segmentTable, 0, this.segments);
+        this.body.flip();
+        page.put(this.body);
+        page.flip();
+        page.putInt(CHECKSUM_OFFSET, OggCrc.checksum(page, 0, page.limit()));
+
+        this.body.clear();
+        this.segments = 0;
+        this.packets = 0;
+        return page;
+    }
+}
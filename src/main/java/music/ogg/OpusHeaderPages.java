@@ -0,0 +1,69 @@
+package music.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Builds the two Ogg Opus header pages of a stream (identification and comment header).
+ * The pages only differ between streams by their format and serial number, so they are built once per format
+ * as a template, and new streams only patch in their serial number and checksum.
+ */
+public class OpusHeaderPages {
+    private static final int SERIAL_OFFSET = 14;
+    private static final int CHECKSUM_OFFSET = 22;
+    private static final int SEGMENT_COUNT_OFFSET = 26;
+    private static final int HEADER_SIZE = 27;
+
+    private record Format(int channelCount, int inputSampleRate) {
+    }
+
+    private static final Map<Format, ByteBuffer> templates = new ConcurrentHashMap<>();
+
+    private OpusHeaderPages() {}
+
+    /**
+     * Retrieves the header pages of a stream.
+     * @param channelCount Output channel count.
+     * @param inputSampleRate Original input sample rate.
+     * @param serialNum Bitstream serial number.
+     * @return Read-only buffer containing both pages, to be sent before any audio page.
+     */
+    public static ByteBuffer get(int channelCount, int inputSampleRate, int serialNum) {
+        ByteBuffer template = templates.computeIfAbsent(new Format(channelCount, inputSampleRate), OpusHeaderPages::build);
+        ByteBuffer pages = ByteBuffer.allocate(template.remaining()).order(ByteOrder.LITTLE_ENDIAN);
+        pages.put(template.duplicate()).flip();
+
+        int offset = 0;
+        while (offset < pages.limit()) {
+            int length = pageLength(pages, offset);
+            pages.putInt(offset + SERIAL_OFFSET, serialNum);
+            pages.putInt(offset + CHECKSUM_OFFSET, 0);
+            pages.putInt(offset + CHECKSUM_OFFSET, OggCrc.checksum(pages, offset, offset + length));
+            offset += length;
+        }
+        return pages.asReadOnlyBuffer();
+    }
+
+    private static ByteBuffer build(Format format) {
+        // https://tools.ietf.org/html/rfc7845
+        OggPageWriter writer = new OggPageWriter();
+        writer.addPacket(OpusHeaders.idHeader(format.channelCount(), format.inputSampleRate()));
+        ByteBuffer first = writer.finishPage(OggPageWriter.FLAG_BOS, 0, 0, 0);
+        ByteBuffer template = ByteBuffer.allocate(first.remaining() + HEADER_SIZE + 255 + 1024);
+        template.put(first);
+        writer.addPacket(OpusHeaders.commentHeader());
+        template.put(writer.finishPage(0, 0, 0, 1));
+        return template.flip().asReadOnlyBuffer();
+    }
+
+    private static int pageLength(ByteBuffer pages, int offset) {
+        int segments = pages.get(offset + SEGMENT_COUNT_OFFSET) & 0xFF;
+        int length = HEADER_SIZE + segments;
+        for (int i = 0; i < segments; i++) {
+            length += pages.get(offset + HEADER_SIZE + i) & 0xFF;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,54 @@
+package music.ogg;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Builds the Ogg Opus header packets.
+ * https://tools.ietf.org/html/rfc7845#section-5
+ */
+public class OpusHeaders {
+    private static final String VENDOR = "libopus 1.1";
+    // Comment header is padded so that the header pages add up to the size browsers are used to
+    private static final int COMMENT_HEADER_SIZE = 764;
+
+    private OpusHeaders() {}
+
+    /**
+     * Builds the identification header packet ("OpusHead") for channel mapping family 0.
+     * @param channelCount Output channel count.
+     * @param inputSampleRate Original input sample rate.
+     * @return Packet data.
+     */
+    public static ByteBuffer idHeader(int channelCount, int inputSampleRate) {
+        ByteBuffer buf = ByteBuffer.allocate(19).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("OpusHead".getBytes(StandardCharsets.US_ASCII));
+        // version
+        buf.put((byte) 1);
+        buf.put((byte) channelCount);
+        // pre-skip
+        buf.putShort((short) 0);
+        buf.putInt(inputSampleRate);
+        // output gain
+        buf.putShort((short) 0);
+        // channel mapping family
+        buf.put((byte) 0);
+        return buf.flip();
+    }
+
+    /**
+     * Builds the comment header packet ("OpusTags") with no user comments.
+     * @return Packet data.
+     */
+    public static ByteBuffer commentHeader() {
+        byte[] vendor = VENDOR.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(COMMENT_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("OpusTags".getBytes(StandardCharsets.US_ASCII));
+        buf.putInt(vendor.length);
+        buf.put(vendor);
+        // user comment list length
+        buf.putInt(0);
+        return buf.clear();
+    }
+}
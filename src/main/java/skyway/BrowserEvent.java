@@ -0,0 +1,40 @@
+package skyway;
+
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Lifecycle events reported by the client page running in the browser of each channel.
+ */
+public enum BrowserEvent {
+    LOADED("Page loaded"),
+    CONNECTED("Connected to the Skyway room"),
+    PLAYING("Playing audio"),
+    DISCONNECTED("Disconnected from the Skyway room"),
+    // sent periodically while the page is running
+    HEARTBEAT("Heartbeat");
+
+    private final String description;
+
+    BrowserEvent(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Parses the event name sent by the client page.
+     * @param name Event name, e.g. "connected".
+     * @return Event, or {@code null} if unknown.
+     */
+    @Nullable
+    public static BrowserEvent fromName(String name) {
+        for (BrowserEvent event : values()) {
+            if (event.name().equalsIgnoreCase(name)) {
+                return event;
+            }
+        }
+        return null;
+    }
+}
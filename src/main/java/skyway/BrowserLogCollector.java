@@ -0,0 +1,217 @@
+package skyway;
+
+import log.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.LogEntry;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static utils.EnvConfig.envInt;
+
+/**
+ * Collects the browser console logs of all channels on one background thread.
+ * Each pass drains the logs of every page, keeps the latest lines of each channel,
+ * and forwards them to the logger as one batch per channel.
+ * In tab mode the console logs are shared by the whole browser, so they are drained once per pass,
+ * and each line is attributed to the channel whose page it comes from, found by the channel ID in its source URL.
+ * Lines from other sources, e.g. scripts loaded from elsewhere, are forwarded as lines of the shared browser.
+ */
+class BrowserLogCollector {
+    private static final long INTERVAL_SECONDS = Math.max(1, envInt("SKYWAY_LOG_INTERVAL_SECONDS", 5));
+    // lines kept per channel
+    private static final int CAPACITY = Math.max(1, envInt("SKYWAY_LOG_LINES", 200));
+    private static final Pattern PAGE_URL =
+            Pattern.compile("/skyway/([0-9a-f]{8}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{4}-[0-9a-f]{12})");
+
+    private final Logger logger;
+    // all sessions read the logs of the same browser
+    private final boolean sharedBrowser;
+    private final Map<UUID, Channel> channels;
+    private final ScheduledExecutorService collector;
+
+    private static final class Channel {
+        private final BrowserSession session;
+        // guarded by this
+        private final Deque<String> lines;
+
+        private Channel(BrowserSession session) {
+            this.session = session;
+            this.lines = new ArrayDeque<>(CAPACITY);
+        }
+    }
+
+    BrowserLogCollector(Logger logger, boolean sharedBrowser) {
+        this.logger = logger;
+        this.sharedBrowser = sharedBrowser;
+        this.channels = new ConcurrentHashMap<>();
+        this.collector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "browser-log-collector");
+            t.setDaemon(true);
+            return t;
+        });
+        this.collector.scheduleWithFixedDelay(this::collectAll, INTERVAL_SECONDS, INTERVAL_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Starts collecting the logs of the channel.
+     * @param channelId Voice channel ID.
+     * @param session Client page of the channel.
+     */
+    void register(UUID channelId, BrowserSession session) {
+        this.channels.put(channelId, new Channel(session));
+    }
+
+    /**
+     * Stops collecting the logs of the channel, after collecting the ones left.
+     * To be called before the page is closed.
+     * @param channelId Voice channel ID.
+     */
+    void unregister(UUID channelId) {
+        if (this.sharedBrowser) {
+            Channel channel = this.channels.get(channelId);
+            if (channel == null) return;
+            // drained while the channel is still registered, so that its lines are attributed to it
+            collectShared(channel.session);
+            this.channels.remove(channelId);
+            return;
+        }
+        Channel channel = this.channels.remove(channelId);
+        if (channel == null) return;
+        // sessions serialize their commands, so this is safe while the collector thread drains them
+        collect(channelId, channel);
+    }
+
+    /**
+     * Stops collecting the logs of the channel, without collecting the ones left,
+     * e.g. as its browser stopped responding.
+     * @param channelId Voice channel ID.
+     */
+    void remove(UUID channelId) {
+        this.channels.remove(channelId);
+    }
+
+    /**
+     * Retrieves the latest console logs of the channel.
+     * @param channelId Voice channel ID.
+     * @return Log lines, oldest first. Empty if the channel is not registered.
+     */
+    List<String> getRecentLogs(UUID channelId) {
+        Channel channel = this.channels.get(channelId);
+        if (channel == null) return List.of();
+        synchronized (channel) {
+            return new ArrayList<>(channel.lines);
+        }
+    }
+
+    private void collectAll() {
+        if (this.sharedBrowser) {
+            // a tab left from a browser since relaunched fails, so try the next one
+            for (Channel channel : this.channels.values()) {
+                if (collectShared(channel.session)) return;
+            }
+            return;
+        }
+        for (Map.Entry<UUID, Channel> e : this.channels.entrySet()) {
+            collect(e.getKey(), e.getValue());
+        }
+    }
+
+    private void collect(UUID channelId, Channel channel) {
+        LogEntries entries;
+        try {
+            entries = channel.session.readLogs();
+        } catch (WebDriverException e) {
+            this.logger.debug("[Selenium] Failed to read the console logs of channel " + channelId + ": " + e.getMessage());
+            return;
+        }
+
+        List<String> lines = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            lines.add(entry.toString());
+        }
+        append(channelId, channel, lines);
+    }
+
+    /**
+     * Drains the logs of the shared browser through one of its tabs, and attributes each line to its channel.
+     * @param session Any tab of the browser.
+     * @return {@code false} if the logs could not be read through the tab.
+     */
+    private boolean collectShared(BrowserSession session) {
+        LogEntries entries;
+        try {
+            entries = session.readLogs();
+        } catch (WebDriverException e) {
+            this.logger.debug("[Selenium] Failed to read the console logs of the shared browser: " + e.getMessage());
+            return false;
+        }
+
+        Map<UUID, List<String>> byChannel = new HashMap<>();
+        List<String> unattributed = new ArrayList<>();
+        for (LogEntry entry : entries) {
+            String line = entry.toString();
+            UUID channelId = findChannel(line);
+            if (channelId != null) {
+                byChannel.computeIfAbsent(channelId, k -> new ArrayList<>()).add(line);
+            } else {
+                unattributed.add(line);
+            }
+        }
+        for (Map.Entry<UUID, List<String>> e : byChannel.entrySet()) {
+            Channel channel = this.channels.get(e.getKey());
+            if (channel != null) {
+                append(e.getKey(), channel, e.getValue());
+            } else {
+                unattributed.addAll(e.getValue());
+            }
+        }
+        if (!unattributed.isEmpty()) {
+            this.logger.log(String.format("[Selenium console] Shared browser, %s line(s):%s",
+                    unattributed.size(), formatBatch(unattributed)));
+        }
+        return true;
+    }
+
+    @Nullable
+    private static UUID findChannel(String line) {
+        // console messages of a client page start with its URL, which ends with the channel ID
+        Matcher m = PAGE_URL.matcher(line);
+        return m.find() ? UUID.fromString(m.group(1)) : null;
+    }
+
+    private void append(UUID channelId, Channel channel, List<String> lines) {
+        if (lines.isEmpty()) return;
+        synchronized (channel) {
+            for (String line : lines) {
+                if (channel.lines.size() == CAPACITY) {
+                    channel.lines.removeFirst();
+                }
+                channel.lines.addLast(line);
+            }
+        }
+        this.logger.log(String.format("[Selenium console] Channel %s, %s line(s):%s",
+                channelId, lines.size(), formatBatch(lines)));
+    }
+
+    private static String formatBatch(List<String> lines) {
+        StringBuilder batch = new StringBuilder();
+        for (String line : lines) {
+            batch.append('\n').append(line);
+        }
+        return batch.toString();
+    }
+}
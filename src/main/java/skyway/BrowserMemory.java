@@ -0,0 +1,38 @@
+package skyway;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Measures the memory taken by the browsers, i.e. the child processes of this process.
+ */
+final class BrowserMemory {
+    private BrowserMemory() {
+    }
+
+    /**
+     * Sums the resident set size of all descendant processes, as read from /proc.
+     * Pages shared between processes are counted once per process, so this overstates the actual usage somewhat.
+     * @return Resident set size in bytes, or 0 if not available on this system.
+     */
+    static long residentBytes() {
+        return ProcessHandle.current().descendants()
+                .mapToLong(p -> residentBytes(p.pid()))
+                .sum();
+    }
+
+    private static long residentBytes(long pid) {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc", Long.toString(pid), "status"))) {
+                if (!line.startsWith("VmRSS:")) continue;
+                // e.g. "VmRSS:     123456 kB"
+                String[] parts = line.trim().split("\\s+");
+                return Long.parseLong(parts[1]) * 1024;
+            }
+        } catch (IOException | RuntimeException e) {
+            // the process has exited, or /proc is not available
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,39 @@
+package skyway;
+
+import org.openqa.selenium.logging.LogEntries;
+
+/**
+ * Client page of one voice channel, opened in a browser.
+ */
+interface BrowserSession {
+    /**
+     * Loads the client page.
+     * @param url Client page URL.
+     */
+    void open(String url);
+
+    /**
+     * Runs a script on the client page.
+     * @param script Script.
+     * @param args Script arguments.
+     * @return Value returned by the script, or {@code null} if the page is gone.
+     */
+    Object executeScript(String script, Object... args);
+
+    /**
+     * Reads the browser console logs since the last read.
+     * @return Log entries.
+     */
+    LogEntries readLogs();
+
+    /**
+     * Closes the client page.
+     */
+    void close();
+
+    /**
+     * Closes the client page after its browser failed, without reusing the browser.
+     * May be called while another command on the page is stuck.
+     */
+    void destroy();
+}
@@ -0,0 +1,243 @@
+package skyway;
+
+import log.Logger;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.chrome.ChromeOptions;
+import org.openqa.selenium.logging.LogType;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+
+import static utils.EnvConfig.envInt;
+
+/**
+ * Pool of pre-launched headless Chrome sessions, so that joining a channel does not wait for a browser to start.
+ * At least the minimum number of idle sessions is kept warm in the background, and idle sessions are health-checked.
+ * Sessions are returned to the pool after use, up to the maximum number of sessions the pool keeps,
+ * and recycled for a fresh one after a number of uses.
+ */
+class ChromeDriverPool {
+    private static final int MIN_IDLE = envInt("SKYWAY_POOL_MIN", 1);
+    private static final int MAX_SIZE = Math.max(MIN_IDLE, envInt("SKYWAY_POOL_MAX", 4));
+    private static final int MAX_USES = Math.max(1, envInt("SKYWAY_POOL_MAX_USES", 20));
+    private static final long HEALTH_CHECK_SECONDS = 30;
+
+    private final Logger logger;
+    private final Deque<ChromeDriver> idle;
+    // uses of each session kept by the pool, whether idle or in use
+    private final Map<ChromeDriver, Integer> uses;
+    private final ScheduledExecutorService maintainer;
+    // sessions being launched in the background
+    private int launching;
+
+    private long acquires;
+    private long warmAcquires;
+    private long lastAcquireNanos;
+    private long maxAcquireNanos;
+    private long totalAcquireNanos;
+
+    ChromeDriverPool(Logger logger) {
+        this.logger = logger;
+        this.idle = new ArrayDeque<>();
+        this.uses = new IdentityHashMap<>();
+        this.maintainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "chrome-driver-pool");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maintainer.scheduleWithFixedDelay(this::maintain, 0, HEALTH_CHECK_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Launches a new headless Chrome session, outside of any pool.
+     * @return Session.
+     */
+    static ChromeDriver launch() {
+        ChromeOptions options = new ChromeOptions()
+                .setBinary(System.getenv("CHROME_BIN"))
+                .addArguments("--no-sandbox")
+                .addArguments("--disable-dev-shm-usage")
+                // the page starts playing by itself, without a click to interact with the document first
+                .addArguments("--autoplay-policy=no-user-gesture-required")
+                // client pages in background tabs keep streaming at full rate
+                .addArguments("--disable-background-timer-throttling")
+                .addArguments("--disable-renderer-backgrounding")
+                .addArguments("--disable-backgrounding-occluded-windows")
+                .setHeadless(true);
+        ChromeDriver driver = new ChromeDriver(options);
+        driver.setLogLevel(Level.ALL);
+        return driver;
+    }
+
+    private static boolean isHealthy(ChromeDriver driver) {
+        try {
+            driver.getWindowHandle();
+            return true;
+        } catch (WebDriverException e) {
+            return false;
+        }
+    }
+
+    private static void quit(ChromeDriver driver) {
+        try {
+            driver.quit();
+        } catch (WebDriverException e) {
+            // already gone
+        }
+    }
+
+    /**
+     * Takes an idle session, or launches a new one if there is none.
+     * @return Session, to be given back with {@link #release(ChromeDriver)}.
+     */
+    ChromeDriver acquire() {
+        long start = System.nanoTime();
+        ChromeDriver driver;
+        boolean warm = false;
+        while (true) {
+            synchronized (this) {
+                driver = this.idle.poll();
+            }
+            if (driver == null) {
+                driver = launch();
+                synchronized (this) {
+                    if (this.uses.size() < MAX_SIZE) {
+                        this.uses.put(driver, 0);
+                    }
+                }
+                break;
+            }
+            if (isHealthy(driver)) {
+                warm = true;
+                break;
+            }
+            discard(driver);
+        }
+
+        long elapsed = System.nanoTime() - start;
+        synchronized (this) {
+            this.uses.computeIfPresent(driver, (d, n) -> n + 1);
+            this.acquires++;
+            if (warm) this.warmAcquires++;
+            this.lastAcquireNanos = elapsed;
+            this.maxAcquireNanos = Math.max(this.maxAcquireNanos, elapsed);
+            this.totalAcquireNanos += elapsed;
+        }
+        this.logger.log(String.format("[Selenium] Acquired %s browser session in %s ms (%s)",
+                warm ? "warm" : "cold", TimeUnit.NANOSECONDS.toMillis(elapsed), formatStats()));
+        this.maintainer.execute(this::maintain);
+        return driver;
+    }
+
+    /**
+     * Gives back a session after use. It is reset and kept for the next join,
+     * unless it is broken, worn out, or not kept by the pool.
+     * @param driver Session.
+     */
+    void release(ChromeDriver driver) {
+        Integer used;
+        synchronized (this) {
+            used = this.uses.get(driver);
+        }
+        if (used == null || used >= MAX_USES) {
+            discard(driver);
+            this.maintainer.execute(this::maintain);
+            return;
+        }
+        this.maintainer.execute(() -> {
+            try {
+                driver.get("about:blank");
+                // drop the console logs of the last page
+                driver.manage().logs().get(LogType.BROWSER);
+            } catch (WebDriverException e) {
+                discard(driver);
+                return;
+            }
+            synchronized (this) {
+                this.idle.push(driver);
+            }
+        });
+    }
+
+    /**
+     * Quits a session, e.g. one that stopped responding, instead of giving it back.
+     * @param driver Session.
+     */
+    void discard(ChromeDriver driver) {
+        synchronized (this) {
+            this.uses.remove(driver);
+        }
+        quit(driver);
+    }
+
+    /**
+     * Runs on the background thread. Drops broken idle sessions, and launches new ones up to the minimum.
+     */
+    private void maintain() {
+        ChromeDriver[] sessions;
+        synchronized (this) {
+            sessions = this.idle.toArray(new ChromeDriver[0]);
+        }
+        for (ChromeDriver driver : sessions) {
+            if (isHealthy(driver)) continue;
+            synchronized (this) {
+                if (!this.idle.remove(driver)) continue;
+            }
+            this.logger.log("[Selenium] Dropping broken idle browser session");
+            discard(driver);
+        }
+
+        while (true) {
+            synchronized (this) {
+                if (this.idle.size() + this.launching >= MIN_IDLE || this.uses.size() >= MAX_SIZE) return;
+                this.launching++;
+            }
+            ChromeDriver driver = null;
+            try {
+                driver = launch();
+            } catch (WebDriverException e) {
+                this.logger.log("[Selenium] Failed to launch a browser session: " + e.getMessage());
+            }
+            synchronized (this) {
+                this.launching--;
+                if (driver == null) return;
+                this.uses.put(driver, 0);
+                this.idle.push(driver);
+            }
+        }
+    }
+
+    /**
+     * Stops the background thread and quits the idle sessions. Sessions in use are left to their users.
+     */
+    void shutdown() {
+        this.maintainer.shutdownNow();
+        ChromeDriver driver;
+        while (true) {
+            synchronized (this) {
+                driver = this.idle.poll();
+            }
+            if (driver == null) return;
+            discard(driver);
+        }
+    }
+
+    /**
+     * Formats the acquire statistics.
+     * @return Formatted statistics.
+     */
+    synchronized String formatStats() {
+        return String.format("%s idle, %s kept, %s/%s warm, acquire last %s ms / max %s ms / avg %s ms",
+                this.idle.size(), this.uses.size(), this.warmAcquires, this.acquires,
+                TimeUnit.NANOSECONDS.toMillis(this.lastAcquireNanos),
+                TimeUnit.NANOSECONDS.toMillis(this.maxAcquireNanos),
+                this.acquires == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(this.totalAcquireNanos / this.acquires));
+    }
+}
@@ -0,0 +1,45 @@
+package skyway;
+
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.LogType;
+
+/**
+ * Client page opened in a browser of its own, taken from the {@link ChromeDriverPool}.
+ * A driver is not thread-safe, so its commands are serialized.
+ */
+class PooledBrowserSession implements BrowserSession {
+    private final ChromeDriverPool pool;
+    private final ChromeDriver driver;
+
+    PooledBrowserSession(ChromeDriverPool pool) {
+        this.pool = pool;
+        this.driver = pool.acquire();
+    }
+
+    @Override
+    public synchronized void open(String url) {
+        this.driver.get(url);
+    }
+
+    @Override
+    public synchronized Object executeScript(String script, Object... args) {
+        return this.driver.executeScript(script, args);
+    }
+
+    @Override
+    public synchronized LogEntries readLogs() {
+        return this.driver.manage().logs().get(LogType.BROWSER);
+    }
+
+    @Override
+    public synchronized void close() {
+        this.pool.release(this.driver);
+    }
+
+    @Override
+    public void destroy() {
+        // not synchronized, as quitting the browser is what unblocks a stuck command
+        this.pool.discard(this.driver);
+    }
+}
@@ -0,0 +1,141 @@
+package skyway;
+
+import log.Logger;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WindowType;
+import org.openqa.selenium.chrome.ChromeDriver;
+import org.openqa.selenium.logging.LogEntries;
+import org.openqa.selenium.logging.LogType;
+
+/**
+ * One Chrome process hosting the client pages of many voice channels, one tab per channel.
+ * Each page still plays the stream of its own channel, while the browser process itself is shared,
+ * which takes far less memory than a browser per channel.
+ * A driver only controls one tab at a time, so every operation switches to its tab under the lock of the host.
+ */
+class SharedBrowser {
+    private final Logger logger;
+    // guarded by this
+    private ChromeDriver driver;
+    // blank tab kept open, so that the browser stays up while no channel is joined
+    private String homeHandle;
+    private int tabs;
+
+    SharedBrowser(Logger logger) {
+        this.logger = logger;
+    }
+
+    /**
+     * Opens a new blank tab, launching the browser first if it is not running.
+     * @return Session of the tab.
+     */
+    synchronized BrowserSession openTab() {
+        ensureRunning();
+        this.driver.switchTo().newWindow(WindowType.TAB);
+        this.tabs++;
+        return new Tab(this.driver, this.driver.getWindowHandle());
+    }
+
+    private void ensureRunning() {
+        if (this.driver != null) {
+            try {
+                this.driver.getWindowHandle();
+                return;
+            } catch (WebDriverException e) {
+                this.logger.log("[Selenium] Shared browser is not responding, relaunching: " + e.getMessage());
+                quit(this.driver);
+            }
+        }
+        this.driver = ChromeDriverPool.launch();
+        this.homeHandle = this.driver.getWindowHandle();
+        this.tabs = 0;
+    }
+
+    private static void quit(ChromeDriver driver) {
+        try {
+            driver.quit();
+        } catch (WebDriverException ignored) {
+            // already gone
+        }
+    }
+
+    /**
+     * Forgets the browser after it has been quit, if it is still the one running.
+     * The tabs opened in it are gone, and the next tab is opened in a new browser.
+     * @param driver Browser quit.
+     */
+    private synchronized void abandon(ChromeDriver driver) {
+        if (driver != this.driver) return;
+        this.logger.log("[Selenium] Abandoned the shared browser with " + this.tabs + " tab(s)");
+        this.driver = null;
+    }
+
+    /**
+     * Retrieves the number of client pages open.
+     * @return Number of tabs, excluding the blank one.
+     */
+    synchronized int getTabs() {
+        return this.tabs;
+    }
+
+    private final class Tab implements BrowserSession {
+        // browser the tab was opened in, which may since have been relaunched
+        private final ChromeDriver driver;
+        private final String handle;
+        private boolean closed;
+
+        private Tab(ChromeDriver driver, String handle) {
+            this.driver = driver;
+            this.handle = handle;
+        }
+
+        private boolean select() {
+            if (this.closed || this.driver != SharedBrowser.this.driver) return false;
+            this.driver.switchTo().window(this.handle);
+            return true;
+        }
+
+        @Override
+        public void open(String url) {
+            synchronized (SharedBrowser.this) {
+                if (!select()) return;
+                this.driver.get(url);
+            }
+        }
+
+        @Override
+        public Object executeScript(String script, Object... args) {
+            synchronized (SharedBrowser.this) {
+                if (!select()) return null;
+                return this.driver.executeScript(script, args);
+            }
+        }
+
+        @Override
+        public LogEntries readLogs() {
+            // console logs are collected per browser, so this also drains the logs of the other tabs
+            synchronized (SharedBrowser.this) {
+                return this.driver.manage().logs().get(LogType.BROWSER);
+            }
+        }
+
+        @Override
+        public void close() {
+            synchronized (SharedBrowser.this) {
+                if (!select()) return;
+                this.closed = true;
+                SharedBrowser.this.tabs--;
+                this.driver.close();
+                this.driver.switchTo().window(SharedBrowser.this.homeHandle);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            // not synchronized, as quitting the browser is what unblocks a command stuck under the lock of the host;
+            // the other tabs go with it, and are restarted by the watchdog once their heartbeats stop
+            quit(this.driver);
+            abandon(this.driver);
+        }
+    }
+}
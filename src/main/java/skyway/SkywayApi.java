@@ -1,13 +1,38 @@
 package skyway;
 
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 
 public interface SkywayApi {
     /**
      * joinChannel joins the actual voice channel via Skyway API.
+     * The browser is launched in the background, so that joins of different channels run in parallel.
+     * The channel is to be closed if the join fails.
      * @param audioOrigin Audio origin URL.
      * @param channelId Voice channel ID.
+     * @return Future completed once the client page has loaded.
      */
-    void joinChannel(String audioOrigin, UUID channelId);
+    CompletableFuture<Void> joinChannel(String audioOrigin, UUID channelId);
     void close(UUID channelID);
+
+    /**
+     * Sets the gain applied by the browser to the audio sent to the voice channel.
+     * @param channelId Voice channel ID.
+     * @param volume Volume in percent.
+     */
+    void setVolume(UUID channelId, int volume);
+
+    /**
+     * Handles a lifecycle event reported by the client page of the channel.
+     * @param channelId Voice channel ID.
+     * @param event Event.
+     */
+    void onBrowserEvent(UUID channelId, BrowserEvent event);
+
+    /**
+     * Retrieves the number of times the browser of the channel was restarted after failing.
+     * @param channelId Voice channel ID.
+     * @return Number of restarts.
+     */
+    int getBrowserRestarts(UUID channelId);
 }
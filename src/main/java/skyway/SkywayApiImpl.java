@@ -1,111 +1,405 @@
 package skyway;
 
 import log.Logger;
-import org.openqa.selenium.By;
-import org.openqa.selenium.chrome.ChromeDriver;
-import org.openqa.selenium.chrome.ChromeOptions;
-import org.openqa.selenium.logging.LogEntries;
-import org.openqa.selenium.logging.LogType;
-import org.openqa.selenium.support.ui.WebDriverWait;
-import utils.StoppableThread;
-
-import java.time.Duration;
-import java.util.HashMap;
+import org.jetbrains.annotations.Nullable;
+import org.openqa.selenium.WebDriverException;
+
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
-import java.util.logging.Level;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import static org.openqa.selenium.support.ui.ExpectedConditions.presenceOfElementLocated;
+import static utils.EnvConfig.envInt;
 
 public class SkywayApiImpl implements SkywayApi {
-    private record Player(ChromeDriver driver, StoppableThread player,
-                          StoppableThread log) {
+    // hosts all channels as tabs of one browser if set to "tab", instead of a browser per channel
+    private static final boolean TAB_MODE = "tab".equals(System.getenv("SKYWAY_BROWSER_MODE"));
+    // time the client page has to report it is loaded, before the join fails
+    private static final long READY_TIMEOUT_SECONDS = 30;
+    // interval of the browser health checks, disabled if set to 0
+    private static final long WATCHDOG_INTERVAL_SECONDS = envInt("SKYWAY_WATCHDOG_INTERVAL_SECONDS", 15);
+    // time without a heartbeat from the page, before its browser is restarted
+    private static final long HEARTBEAT_TIMEOUT_SECONDS = envInt("SKYWAY_HEARTBEAT_TIMEOUT_SECONDS", 30);
+    // JavaScript heap the page may use, before its browser is restarted; no limit if set to 0
+    private static final long MAX_HEAP_MB = envInt("SKYWAY_MAX_HEAP_MB", 512);
+    // time the browser has to answer a health check
+    private static final long CHECK_TIMEOUT_SECONDS = 10;
+    // health checks waiting on the browsers at the same time, at most
+    private static final int PROBE_THREADS = 4;
+    private static final String HEAP_SCRIPT = "return performance.memory ? performance.memory.usedJSHeapSize : 0;";
+
+    private static final class Player {
+        private final String audioOrigin;
+        private final long joinStartNanos;
+        // completed when the page reports it is loaded
+        private final CompletableFuture<Void> ready;
+        // guarded by this, set once the browser is launched
+        private BrowserSession session;
+        private boolean closed;
+        private boolean restarting;
+        private int restarts;
+        private volatile BrowserEvent lastEvent;
+        private volatile long lastHeartbeatNanos;
+        // last health check sent to the page, which may still be stuck in the browser
+        private volatile Future<Object> probe;
+
+        private Player(String audioOrigin, long joinStartNanos) {
+            this.audioOrigin = audioOrigin;
+            this.joinStartNanos = joinStartNanos;
+            this.ready = new CompletableFuture<>();
+            this.lastHeartbeatNanos = joinStartNanos;
+        }
+
+        private synchronized BrowserSession getSession() {
+            return this.session;
+        }
+    }
+
+    /**
+     * Reason to restart the browser of a channel.
+     * @param reason Description.
+     * @param browserFailed {@code true} if the browser itself does not respond, rather than only the page.
+     */
+    private record Failure(String reason, boolean browserFailed) {
     }
 
+    // accessed from the join threads, the music server threads and the command threads
     private final Map<UUID, Player> players;
     private final Logger logger;
+    // one of the two is used, depending on the mode
+    private final ChromeDriverPool pool;
+    private final SharedBrowser sharedBrowser;
+    private final BrowserLogCollector logCollector;
+    // runs the joins of different channels in parallel, and the browser restarts
+    private final ExecutorService joinExecutor;
+    private final ScheduledExecutorService watchdog;
+    // runs the health checks, so that a stuck browser neither blocks the watchdog nor piles up threads
+    private final ExecutorService prober;
+    private final AtomicInteger totalRestarts;
 
     public SkywayApiImpl(Logger logger) {
-        this.players = new HashMap<>();
+        this.players = new ConcurrentHashMap<>();
         this.logger = logger;
+        this.pool = TAB_MODE ? null : new ChromeDriverPool(logger);
+        this.sharedBrowser = TAB_MODE ? new SharedBrowser(logger) : null;
+        this.logCollector = new BrowserLogCollector(logger, TAB_MODE);
+        this.joinExecutor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "skyway-join");
+            t.setDaemon(true);
+            return t;
+        });
+        this.totalRestarts = new AtomicInteger();
+        this.prober = Executors.newFixedThreadPool(PROBE_THREADS, r -> {
+            Thread t = new Thread(r, "browser-health-probe");
+            t.setDaemon(true);
+            return t;
+        });
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "browser-watchdog");
+            t.setDaemon(true);
+            return t;
+        });
+        if (WATCHDOG_INTERVAL_SECONDS > 0) {
+            this.watchdog.scheduleWithFixedDelay(this::checkHealth,
+                    WATCHDOG_INTERVAL_SECONDS, WATCHDOG_INTERVAL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    private BrowserSession openSession() {
+        return TAB_MODE ? this.sharedBrowser.openTab() : new PooledBrowserSession(this.pool);
     }
 
     @Override
-    public synchronized void joinChannel(String audioOrigin, UUID channelId) {
+    public CompletableFuture<Void> joinChannel(String audioOrigin, UUID channelId) {
         this.logger.log("[Selenium] Joining channel " + channelId.toString() + "...");
-        ChromeOptions options = new ChromeOptions()
-                .setBinary(System.getenv("CHROME_BIN"))
-                .addArguments("--no-sandbox")
-                .addArguments("--disable-dev-shm-usage")
-                .setHeadless(true);
-        ChromeDriver driver = new ChromeDriver(options);
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(60));
-        driver.setLogLevel(Level.ALL);
-        driver.get(audioOrigin);
-
-        StoppableThread player = new StoppableThread() {
-            @Override
-            public void run() {
-                Logger logger = SkywayApiImpl.this.logger;
-                // Interact with the document first before playing
-                var title = wait.until(presenceOfElementLocated(By.id("title")));
-                title.click();
-
-                WebDriverWait waitConnected = new WebDriverWait(driver, Duration.ofHours(1), Duration.ofMillis(250));
-                // Wait until the Skyway API connected to the room
-                waitConnected.until(presenceOfElementLocated(By.id("connected-flag")));
-                var playButton = wait.until(presenceOfElementLocated(By.id("button-play")));
-                logger.log("[Selenium] Playing...");
-                playButton.click();
-            }
+        long joinStart = System.nanoTime();
+        // registered before loading the page, which reports its progress to onBrowserEvent from then on
+        Player player = new Player(audioOrigin, joinStart);
+        if (this.players.putIfAbsent(channelId, player) != null) {
+            return CompletableFuture.failedFuture(
+                    new IllegalStateException("Channel " + channelId + " is already joined"));
+        }
 
-            @Override
-            protected void cleanUp() {}
-        };
-        StoppableThread log = new StoppableThread() {
-            @Override
-            public void run() {
-                Logger logger = SkywayApiImpl.this.logger;
-                LogEntries logs = driver.manage().logs().get(LogType.BROWSER);
-                for (var log : logs) {
-                    logger.log("[Selenium console] " + log.toString());
+        // end of the launch and load stages
+        long[] stageEnds = new long[2];
+        return CompletableFuture.runAsync(() -> {
+            BrowserSession session = openSession();
+            stageEnds[0] = System.nanoTime();
+            synchronized (player) {
+                if (player.closed) {
+                    // left while the browser was launching
+                    session.close();
+                    throw new CancellationException("Channel " + channelId + " was closed while joining");
                 }
+                player.session = session;
+                this.logCollector.register(channelId, session);
             }
+            session.open(audioOrigin);
+            stageEnds[1] = System.nanoTime();
+        }, this.joinExecutor).thenCompose(v -> player.ready.orTimeout(READY_TIMEOUT_SECONDS, TimeUnit.SECONDS))
+                // the page becomes ready on a music server thread, which must not run the callers' stages
+                .whenCompleteAsync((v, e) -> {
+                    if (e != null) {
+                        this.logger.log("[Selenium] Failed to join channel " + channelId + ": " + e);
+                        return;
+                    }
+                    long end = System.nanoTime();
+                    this.logger.log(String.format("[Selenium] Joined channel %s in %s ms (launch %s ms, load %s ms, ready %s ms)",
+                            channelId, TimeUnit.NANOSECONDS.toMillis(end - joinStart),
+                            TimeUnit.NANOSECONDS.toMillis(stageEnds[0] - joinStart),
+                            TimeUnit.NANOSECONDS.toMillis(stageEnds[1] - stageEnds[0]),
+                            TimeUnit.NANOSECONDS.toMillis(end - stageEnds[1])));
+                    logMemory();
+                }, this.joinExecutor);
+    }
 
-            @Override
-            protected void cleanUp() {}
-        };
-
-        player.start();
-        log.start();
-        this.players.put(channelId, new Player(
-                driver,
-                player,
-                log
-        ));
+    @Override
+    public void onBrowserEvent(UUID channelId, BrowserEvent event) {
+        Player player = this.players.get(channelId);
+        if (player == null) {
+            // e.g. the page reporting the disconnection while being closed
+            this.logger.debug("[Selenium] " + event.getDescription() + " on closed channel " + channelId);
+            return;
+        }
+        // any event means the page has loaded
+        player.ready.complete(null);
+        if (event == BrowserEvent.HEARTBEAT) {
+            player.lastHeartbeatNanos = System.nanoTime();
+            return;
+        }
+
+        BrowserEvent previous = player.lastEvent;
+        player.lastEvent = event;
+        if (event == previous) {
+            // e.g. playing again after the audio stream reconnected
+            return;
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - player.joinStartNanos);
+        this.logger.log(String.format("[Selenium] Channel %s: %s (%s ms after join)",
+                channelId, event.getDescription(), elapsed));
+        if (event == BrowserEvent.DISCONNECTED) {
+            this.logger.log("[Selenium] Warning: channel " + channelId + " was disconnected from the room unexpectedly");
+        }
+    }
+
+    @Override
+    public void setVolume(UUID channelId, int volume) {
+        Player player = this.players.get(channelId);
+        if (player == null) return;
+        BrowserSession session = player.getSession();
+        // the page starts with the volume served with it, if it is still loading
+        if (session == null) return;
+        session.executeScript("setVolume(arguments[0]);", volume);
     }
 
     @Override
-    public synchronized void close(UUID channelID) {
-        if (!this.players.containsKey(channelID)) return;
+    public void close(UUID channelID) {
+        // removed first, so that the disconnection reported by the page is not taken as unexpected
+        Player player = this.players.remove(channelID);
+        if (player == null) return;
 
         this.logger.log("[Selenium] Closing channel " + channelID.toString() + "...");
-        Player player = this.players.get(channelID);
-        this.players.remove(channelID);
+        BrowserSession session;
+        synchronized (player) {
+            player.closed = true;
+            session = player.session;
+        }
+        player.ready.cancel(false);
+        if (session == null) {
+            // the join or restart closes the browser once it is launched
+            return;
+        }
+        this.logCollector.unregister(channelID);
 
-        // Press disconnect button via chrome driver
-        var driver = player.driver;
-        WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(60));
-        var disconnectButton = wait.until(presenceOfElementLocated(By.id("button-disconnect")));
-        disconnectButton.click();
-        driver.close();
+        try {
+            session.executeScript("disconnect();");
+        } catch (WebDriverException e) {
+            this.logger.log("[Selenium] Failed to disconnect channel " + channelID + ": " + e.getMessage());
+        }
+        try {
+            session.close();
+        } catch (WebDriverException e) {
+            this.logger.log("[Selenium] Failed to close the page of channel " + channelID + ": " + e.getMessage());
+        }
+        logMemory();
+    }
 
-        // Terminate player (if not finished) and log loop
-        if (player.player.isAlive()) {
-            player.player.terminate();
+    @Override
+    public int getBrowserRestarts(UUID channelId) {
+        Player player = this.players.get(channelId);
+        if (player == null) return 0;
+        synchronized (player) {
+            return player.restarts;
         }
-        if (player.log.isAlive()) {
-            player.log.terminate();
+    }
+
+    /**
+     * Runs on the watchdog thread. Restarts the browsers that crashed, hang, stopped sending heartbeats,
+     * or whose page takes too much memory.
+     */
+    private void checkHealth() {
+        for (Map.Entry<UUID, Player> e : this.players.entrySet()) {
+            Player player = e.getValue();
+            // joins still in progress are timed out by the join itself
+            if (!player.ready.isDone() || player.ready.isCompletedExceptionally()) continue;
+            Failure failure = checkHealth(player);
+            if (failure == null) continue;
+            if (TAB_MODE && failure.browserFailed()) {
+                // the shared browser is quit, which takes the pages of all channels with it
+                restartAll(failure.reason());
+                return;
+            }
+            restart(e.getKey(), player, failure);
+        }
+    }
+
+    /**
+     * Checks the health of the browser of a channel.
+     * @param player Player.
+     * @return Reason to restart the browser for, or {@code null} if healthy or still being checked.
+     */
+    @Nullable
+    private Failure checkHealth(Player player) {
+        BrowserSession session;
+        synchronized (player) {
+            if (player.closed || player.restarting) return null;
+            session = player.session;
+        }
+        if (session == null) return new Failure("no browser", false);
+
+        long silence = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - player.lastHeartbeatNanos);
+        if (silence > HEARTBEAT_TIMEOUT_SECONDS) {
+            return new Failure("no heartbeat for " + silence + " s", false);
+        }
+
+        Future<Object> probe = player.probe;
+        if (probe != null && !probe.isDone()) {
+            // already reported as not responding, and released once the browser is quit
+            return null;
+        }
+        Object heap;
+        try {
+            // on another thread, so that a stuck browser does not stop the watchdog
+            probe = this.prober.submit(() -> session.executeScript(HEAP_SCRIPT));
+            player.probe = probe;
+            heap = probe.get(CHECK_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (TimeoutException e) {
+            return new Failure("not responding", true);
+        } catch (ExecutionException e) {
+            return new Failure("crashed: " + e.getCause().getMessage(), true);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        if (heap == null) {
+            // e.g. the tab of a shared browser that was relaunched
+            return new Failure("page is gone", false);
+        }
+        long heapMB = ((Number) heap).longValue() >> 20;
+        if (MAX_HEAP_MB > 0 && heapMB > MAX_HEAP_MB) {
+            return new Failure("page heap at " + heapMB + " MB", false);
+        }
+        return null;
+    }
+
+    /**
+     * Restarts the pages of all channels at once, after the shared browser stopped responding.
+     * @param reason Reason for the restart.
+     */
+    private void restartAll(String reason) {
+        for (Map.Entry<UUID, Player> e : this.players.entrySet()) {
+            Player player = e.getValue();
+            if (!player.ready.isDone() || player.ready.isCompletedExceptionally()) continue;
+            restart(e.getKey(), player, new Failure("shared browser " + reason, true));
         }
     }
+
+    /**
+     * Replaces the page of a channel with a new one.
+     * Only the page is closed if the browser still responds, so that a tab of the shared browser
+     * does not take the other channels down with it; the browser is quit otherwise.
+     * The page attaches to the stream the music server still holds for the channel,
+     * so the queue and the playback position are kept.
+     * @param channelId Voice channel ID.
+     * @param player Player.
+     * @param failure Reason for the restart.
+     */
+    private void restart(UUID channelId, Player player, Failure failure) {
+        BrowserSession old;
+        synchronized (player) {
+            if (player.closed || player.restarting) return;
+            player.restarting = true;
+            old = player.session;
+            player.session = null;
+        }
+        // the last console lines usually tell what went wrong
+        List<String> recentLogs = this.logCollector.getRecentLogs(channelId);
+        this.logger.log(String.format("[Selenium] Warning: browser of channel %s failed (%s), restarting... Last console lines:%s",
+                channelId, failure.reason(), recentLogs.isEmpty() ? " (none)"
+                        : "\n" + String.join("\n", recentLogs.subList(Math.max(0, recentLogs.size() - 10), recentLogs.size()))));
+        this.logCollector.remove(channelId);
+
+        long start = System.nanoTime();
+        CompletableFuture.runAsync(() -> {
+            if (old != null && failure.browserFailed()) {
+                old.destroy();
+            } else if (old != null) {
+                try {
+                    old.close();
+                } catch (WebDriverException e) {
+                    old.destroy();
+                }
+            }
+            BrowserSession session = openSession();
+            synchronized (player) {
+                if (player.closed) {
+                    // left while restarting
+                    session.close();
+                    return;
+                }
+                player.session = session;
+                player.lastEvent = null;
+                player.lastHeartbeatNanos = System.nanoTime();
+                this.logCollector.register(channelId, session);
+            }
+            session.open(player.audioOrigin);
+        }, this.joinExecutor).whenComplete((v, e) -> {
+            int restarts;
+            synchronized (player) {
+                player.restarting = false;
+                restarts = ++player.restarts;
+            }
+            int total = this.totalRestarts.incrementAndGet();
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (e != null) {
+                // tried again on the next check
+                this.logger.log(String.format("[Selenium] Failed to restart browser of channel %s in %s ms: %s",
+                        channelId, elapsed, e));
+                return;
+            }
+            this.logger.log(String.format("[Selenium] Restarted browser of channel %s in %s ms (%s restart(s) for this channel, %s in total)",
+                    channelId, elapsed, restarts, total));
+        });
+    }
+
+    /**
+     * Logs the memory taken by the browsers, to compare the cost per channel between the browser modes.
+     */
+    private void logMemory() {
+        long rss = BrowserMemory.residentBytes();
+        int channels = this.players.size();
+        if (rss == 0) return;
+        this.logger.log(String.format("[Selenium] Browser memory: %s MB RSS for %s channel(s), %s MB per channel (%s mode)",
+                rss >> 20, channels, channels == 0 ? 0 : (rss / channels) >> 20, TAB_MODE ? "tab" : "window"));
+    }
 }
@@ -0,0 +1,47 @@
+package utils;
+
+import log.ConsoleLogger;
+import log.Logger;
+
+import java.util.TimeZone;
+
+/**
+ * Reads numeric settings from environment variables.
+ * Settings are read in static initializers, so a malformed value is logged and replaced with the default
+ * instead of failing the initialization of the class.
+ */
+public class EnvConfig {
+    // no logger is handed over to static initializers
+    private static final Logger logger = new ConsoleLogger(TimeZone.getDefault());
+
+    private EnvConfig() {}
+
+    /**
+     * Reads a non-negative integer.
+     * @param name Name of the environment variable.
+     * @param def Default value, if not set or malformed.
+     * @return Value, negative values are read as 0.
+     */
+    public static int envInt(String name, int def) {
+        return (int) Math.min(Integer.MAX_VALUE, envLong(name, def));
+    }
+
+    /**
+     * Reads a non-negative long integer.
+     * @param name Name of the environment variable.
+     * @param def Default value, if not set or malformed.
+     * @return Value, negative values are read as 0.
+     */
+    public static long envLong(String name, long def) {
+        String value = System.getenv(name);
+        if (value == null || value.isEmpty()) {
+            return def;
+        }
+        try {
+            return Math.max(0, Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            logger.log(String.format("Warning: malformed %s=\"%s\", using the default %s", name, value, def));
+            return def;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package music;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.playback.AllocatingAudioFrameBuffer;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import com.sedmelluq.discord.lavaplayer.track.playback.NonAllocatingAudioFrameBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the allocations of pulling frames from a player, per 20 ms frame:
+ * {@code provide()} with lavaplayer's default frame buffer, as the provider used to,
+ * against {@code provide(MutableAudioFrame)} into a reused buffer with the non-allocating frame buffer.
+ * The track is a generated WAV file played through the local source, so no network access is needed.
+ * Not run as a test. Run with, after {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/classes:target/test-classes:$(cat cp.txt) org.openjdk.jmh.Main FramePullBenchmark -prof gc}
+ * and compare {@code gc.alloc.rate.norm}, the bytes allocated per frame over all threads.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class FramePullBenchmark {
+    private static final int SAMPLE_RATE = 48000;
+    private static final int SECONDS = 30;
+
+    @Param({"allocating", "mutable"})
+    public String mode;
+
+    private Path file;
+    private AudioPlayerManager manager;
+    private AudioPlayer player;
+    private AudioTrack track;
+    private MutableAudioFrame frame;
+
+    @Setup
+    public void setUp() throws Exception {
+        this.file = Files.createTempFile("frame-pull", ".wav");
+        writeSine(this.file);
+
+        this.manager = new DefaultAudioPlayerManager();
+        AudioQualityProfile.STANDARD.configure(this.manager.getConfiguration());
+        boolean mutable = "mutable".equals(this.mode);
+        this.manager.getConfiguration().setFrameBufferFactory(mutable
+                ? NonAllocatingAudioFrameBuffer::new : AllocatingAudioFrameBuffer::new);
+        AudioSourceManagers.registerLocalSource(this.manager);
+        this.track = load(this.manager, this.file.toString());
+        this.player = this.manager.createPlayer();
+        this.player.playTrack(this.track.makeClone());
+
+        if (mutable) {
+            // as kept by MusicServerAudioProvider for the lifetime of a stream
+            this.frame = new MutableAudioFrame();
+            this.frame.setBuffer(ByteBuffer.allocate(AudioQualityProfile.STANDARD.getFormat().maximumChunkSize()));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.player.destroy();
+        this.manager.shutdown();
+        Files.deleteIfExists(this.file);
+    }
+
+    @Benchmark
+    public void pullFrame(Blackhole bh) throws Exception {
+        boolean provided;
+        if (this.frame != null) {
+            provided = this.player.provide(this.frame, 1, TimeUnit.SECONDS);
+            bh.consume(this.frame);
+        } else {
+            Object frame = this.player.provide(1, TimeUnit.SECONDS);
+            provided = frame != null;
+            bh.consume(frame);
+        }
+        if (!provided && this.player.getPlayingTrack() == null) {
+            this.player.playTrack(this.track.makeClone());
+        }
+    }
+
+    private static AudioTrack load(AudioPlayerManager manager, String identifier) throws Exception {
+        CompletableFuture<AudioTrack> loaded = new CompletableFuture<>();
+        manager.loadItem(identifier, new AudioLoadResultHandler() {
+            @Override
+            public void trackLoaded(AudioTrack track) {
+                loaded.complete(track);
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist) {
+                loaded.completeExceptionally(new IllegalStateException("Not a track: " + identifier));
+            }
+
+            @Override
+            public void noMatches() {
+                loaded.completeExceptionally(new IllegalStateException("No matches: " + identifier));
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception) {
+                loaded.completeExceptionally(exception);
+            }
+        });
+        return loaded.get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Writes a 16-bit stereo 440 Hz sine wave, which the player decodes and encodes into Opus frames.
+     */
+    private static void writeSine(Path file) throws IOException {
+        int dataSize = SAMPLE_RATE * SECONDS * 4;
+        ByteBuffer buf = ByteBuffer.allocate(44 + dataSize).order(ByteOrder.LITTLE_ENDIAN);
+        buf.put("RIFF".getBytes()).putInt(36 + dataSize).put("WAVE".getBytes());
+        buf.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) 2)
+                .putInt(SAMPLE_RATE).putInt(SAMPLE_RATE * 4).putShort((short) 4).putShort((short) 16);
+        buf.put("data".getBytes()).putInt(dataSize);
+        for (int i = 0; i < SAMPLE_RATE * SECONDS; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / SAMPLE_RATE) * 8000);
+            buf.putShort(sample).putShort(sample);
+        }
+        try (OutputStream out = Files.newOutputStream(file)) {
+            out.write(buf.array());
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package music.ogg;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Golden pages for the Ogg tests, stored as hex dumps under the test resources.
+ * They are the output of the oggus path the stream was written with before {@link OggPageWriter},
+ * see {@link OggusReference}, and are regenerated with {@link GoldenPages}.
+ */
+final class Fixtures {
+    static final int SERIAL = 0x12345678;
+    // packets of the audio page: {length, seed}, with multi-segment packets and multiples of 255
+    static final int[][] AUDIO_PACKETS = {{100, 1}, {255, 2}, {600, 3}, {510, 4}};
+    static final long AUDIO_GRANULE = 3840;
+    static final int AUDIO_SEQ = 2;
+    // packet of the EOS page
+    static final int[] EOS_PACKET = {255, 5};
+    static final long EOS_GRANULE = 4800;
+    static final int EOS_SEQ = 3;
+
+    private Fixtures() {}
+
+    /**
+     * Reads a hex dump fixture.
+     * @param name File name, without the extension.
+     * @return Bytes.
+     */
+    static byte[] load(String name) {
+        try (InputStream in = Fixtures.class.getResourceAsStream(name + ".hex")) {
+            if (in == null) {
+                throw new IllegalArgumentException("Fixture not found: " + name);
+            }
+            String hex = new String(in.readAllBytes(), StandardCharsets.US_ASCII).replaceAll("\\s+", "");
+            byte[] bytes = new byte[hex.length() / 2];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+            }
+            return bytes;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Builds a code 0 Opus packet (a single 20 ms frame) with deterministic content.
+     * @param length Packet length in bytes.
+     * @param seed Seed of the content.
+     * @return Packet data.
+     */
+    static byte[] packet(int length, int seed) {
+        byte[] packet = new byte[length];
+        packet[0] = (byte) 0xFC;
+        for (int i = 1; i < length; i++) {
+            packet[i] = (byte) ((i - 1) * 31 + seed);
+        }
+        return packet;
+    }
+
+    /**
+     * Formats bytes the way the fixtures are stored, 32 bytes per line.
+     * @param bytes Bytes.
+     * @return Hex dump.
+     */
+    static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder();
+        for (int i = 0; i < bytes.length; i++) {
+            hex.append(String.format("%02x", bytes[i] & 0xff));
+            hex.append(i % 32 == 31 || i == bytes.length - 1 ? '\n' : ' ');
+        }
+        return hex.toString();
+    }
+
+    static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,27 @@
+package music.ogg;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Regenerates the golden page fixtures from the oggus path.
+ * Not run as a test. Run with, after {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/test-classes:$(cat cp.txt) music.ogg.GoldenPages src/test/resources/music/ogg}
+ */
+public class GoldenPages {
+    public static void main(String[] args) throws IOException {
+        Path dir = Path.of(args.length > 0 ? args[0] : "src/test/resources/music/ogg");
+        write(dir, "opus-header-pages", OggusReference.headerPages(2, 48000, Fixtures.SERIAL));
+        write(dir, "audio-page", OggusReference.audioPage(OggusReference.packets(Fixtures.AUDIO_PACKETS),
+                false, Fixtures.AUDIO_GRANULE, Fixtures.SERIAL, Fixtures.AUDIO_SEQ));
+        write(dir, "eos-page", OggusReference.audioPage(OggusReference.packets(Fixtures.EOS_PACKET),
+                true, Fixtures.EOS_GRANULE, Fixtures.SERIAL, Fixtures.EOS_SEQ));
+    }
+
+    private static void write(Path dir, String name, byte[] bytes) throws IOException {
+        Files.writeString(dir.resolve(name + ".hex"), Fixtures.toHex(bytes), StandardCharsets.US_ASCII);
+        System.out.println("Wrote " + name + ".hex, " + bytes.length + " bytes");
+    }
+}
@@ -0,0 +1,79 @@
+package music.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OggCrcTest {
+    private static final int[] LENGTHS = {0, 1, 7, 8, 9, 15, 16, 17, 27, 255, 1000, 4096, 65307};
+
+    /**
+     * Straightforward bit-at-a-time CRC, as specified by RFC 3533.
+     */
+    static int reference(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (data[i] & 0xff) << 24;
+            for (int j = 0; j < 8; j++) {
+                crc = (crc & 0x80000000) != 0 ? (crc << 1) ^ 0x04c11db7 : crc << 1;
+            }
+        }
+        return crc;
+    }
+
+    private static byte[] random(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static ByteBuffer wrap(byte[] data, boolean direct, ByteOrder order) {
+        ByteBuffer buf = direct ? ByteBuffer.allocateDirect(data.length) : ByteBuffer.allocate(data.length);
+        buf.put(data).clear();
+        return buf.order(order);
+    }
+
+    @Test
+    void matchesReference() {
+        for (boolean direct : new boolean[]{false, true}) {
+            for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+                for (int length : LENGTHS) {
+                    // unaligned starts, so that the 8-byte steps straddle word boundaries
+                    for (int offset = 0; offset < 9; offset++) {
+                        byte[] data = random(offset + length + 3);
+                        ByteBuffer buf = wrap(data, direct, order);
+                        assertEquals(reference(data, offset, offset + length),
+                                OggCrc.checksum(buf, offset, offset + length),
+                                String.format("direct=%s order=%s offset=%s length=%s", direct, order, offset, length));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void leavesBufferUntouched() {
+        ByteBuffer buf = wrap(random(100), true, ByteOrder.LITTLE_ENDIAN);
+        buf.position(10).limit(50);
+        // absolute reads, so the range is only bounded by the limit
+        OggCrc.checksum(buf, 0, 50);
+        assertEquals(10, buf.position());
+        assertEquals(50, buf.limit());
+        assertEquals(ByteOrder.LITTLE_ENDIAN, buf.order());
+    }
+
+    @Test
+    void matchesChecksumOfGoldenPage() {
+        byte[] page = Fixtures.load("audio-page");
+        int stored = ByteBuffer.wrap(page).order(ByteOrder.LITTLE_ENDIAN).getInt(22);
+        for (int i = 22; i < 26; i++) {
+            page[i] = 0;
+        }
+        assertEquals(stored, OggCrc.checksum(ByteBuffer.wrap(page), 0, page.length));
+        assertEquals(stored, reference(page, 0, page.length));
+    }
+}
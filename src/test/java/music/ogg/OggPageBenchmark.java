@@ -0,0 +1,74 @@
+package music.ogg;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time to assemble a page of typical Opus packets with {@link OggPageWriter},
+ * against {@code OggPage.dump()} of oggus as the stream used to, see {@link OggusReference},
+ * and the time of the slicing-by-8 checksum against a bit-at-a-time CRC.
+ * Not run as a test. Run with, after {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt}:
+ * {@code java -cp target/classes:target/test-classes:$(cat cp.txt) org.openjdk.jmh.Main OggPageBenchmark -prof gc}
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class OggPageBenchmark {
+    // 20 ms of stereo music at about 64 kbps
+    private static final int PACKET_SIZE = 160;
+
+    @Param({"1", "10", "50"})
+    public int packets;
+
+    private byte[] packet;
+    private byte[][] pagePackets;
+    private OggPageWriter writer;
+    private ByteBuffer page;
+    private byte[] pageBytes;
+    private long seqNum;
+
+    @Setup
+    public void setUp() {
+        this.packet = Fixtures.packet(PACKET_SIZE, 0);
+        this.pagePackets = new byte[this.packets][];
+        for (int i = 0; i < this.packets; i++) {
+            this.pagePackets[i] = this.packet;
+        }
+        this.writer = new OggPageWriter();
+        for (int i = 0; i < this.packets; i++) {
+            this.writer.addPacket(this.packet, 0, this.packet.length);
+        }
+        this.pageBytes = Fixtures.toArray(this.writer.finishPage(0, 0, 0, 0));
+        this.page = ByteBuffer.allocateDirect(this.pageBytes.length).put(this.pageBytes).flip();
+    }
+
+    @Benchmark
+    public ByteBuffer pageWriter() {
+        for (int i = 0; i < this.packets; i++) {
+            this.writer.addPacket(this.packet, 0, this.packet.length);
+        }
+        long seq = this.seqNum++;
+        return this.writer.finishPage(0, seq * 960, 0, (int) seq);
+    }
+
+    @Benchmark
+    public byte[] pageOggus() {
+        long seq = this.seqNum++;
+        return OggusReference.audioPage(this.pagePackets, false, seq * 960, 0, seq);
+    }
+
+    @Benchmark
+    public int crcSlicingBy8() {
+        return OggCrc.checksum(this.page, 0, this.page.limit());
+    }
+
+    @Benchmark
+    public int crcBitwise() {
+        return OggCrcTest.reference(this.pageBytes, 0, this.pageBytes.length);
+    }
+}
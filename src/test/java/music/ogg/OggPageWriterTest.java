@@ -0,0 +1,62 @@
+package music.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OggPageWriterTest {
+    @Test
+    void writesAudioPageWithMultiSegmentPackets() {
+        OggPageWriter writer = new OggPageWriter();
+        writer.addPacket(Fixtures.packet(100, 1), 0, 100);
+        // exactly one full segment, followed by a zero lacing value
+        writer.addPacket(Fixtures.packet(255, 2), 0, 255);
+        writer.addPacket(ByteBuffer.wrap(Fixtures.packet(600, 3)));
+        // two full segments, followed by a zero lacing value
+        byte[] padded = new byte[520];
+        System.arraycopy(Fixtures.packet(510, 4), 0, padded, 10, 510);
+        writer.addPacket(padded, 10, 510);
+        assertEquals(4, writer.packets());
+
+        ByteBuffer page = writer.finishPage(0, 3840, Fixtures.SERIAL, 2);
+        assertArrayEquals(Fixtures.load("audio-page"), Fixtures.toArray(page));
+        assertEquals(0, writer.packets());
+    }
+
+    @Test
+    void writesEndOfStreamPage() {
+        OggPageWriter writer = new OggPageWriter();
+        // leftovers of a previous page must not leak into the next one
+        writer.addPacket(Fixtures.packet(300, 9), 0, 300);
+        writer.finishPage(0, 960, Fixtures.SERIAL, 2);
+
+        writer.addPacket(Fixtures.packet(255, 5), 0, 255);
+        ByteBuffer page = writer.finishPage(OggPageWriter.FLAG_EOS, 4800, Fixtures.SERIAL, 3);
+        assertArrayEquals(Fixtures.load("eos-page"), Fixtures.toArray(page));
+    }
+
+    @Test
+    void leavesPacketBufferUntouched() {
+        OggPageWriter writer = new OggPageWriter();
+        ByteBuffer packet = ByteBuffer.wrap(Fixtures.packet(600, 3));
+        writer.addPacket(packet);
+        assertEquals(0, packet.position());
+        assertEquals(600, packet.remaining());
+    }
+
+    @Test
+    void rejectsPacketsBeyondSegmentTable() {
+        OggPageWriter writer = new OggPageWriter();
+        byte[] packet = Fixtures.packet(254, 0);
+        for (int i = 0; i < 254; i++) {
+            writer.addPacket(packet, 0, packet.length);
+        }
+        assertTrue(writer.canFit(254));
+        assertFalse(writer.canFit(255));
+        writer.addPacket(packet, 0, packet.length);
+        assertFalse(writer.canFit(0));
+        assertThrows(IllegalStateException.class, () -> writer.addPacket(packet, 0, 1));
+    }
+}
@@ -0,0 +1,47 @@
+package music.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares {@link OggPageWriter} and {@link OpusHeaderPages} live with the oggus path they replaced,
+ * and checks that the golden fixtures are still what oggus writes.
+ */
+class OggusCompatibilityTest {
+    @Test
+    void headerPagesMatchOggus() {
+        byte[] expected = OggusReference.headerPages(2, 48000, Fixtures.SERIAL);
+        assertArrayEquals(expected, Fixtures.toArray(OpusHeaderPages.get(2, 48000, Fixtures.SERIAL)));
+        assertArrayEquals(expected, Fixtures.load("opus-header-pages"));
+
+        byte[] mono = OggusReference.headerPages(1, 48000, 0x0BADCAFE);
+        assertArrayEquals(mono, Fixtures.toArray(OpusHeaderPages.get(1, 48000, 0x0BADCAFE)));
+    }
+
+    @Test
+    void audioPagesMatchOggus() {
+        byte[] expected = OggusReference.audioPage(OggusReference.packets(Fixtures.AUDIO_PACKETS),
+                false, Fixtures.AUDIO_GRANULE, Fixtures.SERIAL, Fixtures.AUDIO_SEQ);
+        OggPageWriter writer = new OggPageWriter();
+        for (byte[] packet : OggusReference.packets(Fixtures.AUDIO_PACKETS)) {
+            writer.addPacket(packet, 0, packet.length);
+        }
+        ByteBuffer page = writer.finishPage(0, Fixtures.AUDIO_GRANULE, Fixtures.SERIAL, Fixtures.AUDIO_SEQ);
+        assertArrayEquals(expected, Fixtures.toArray(page));
+        assertArrayEquals(expected, Fixtures.load("audio-page"));
+    }
+
+    @Test
+    void endOfStreamPageMatchesOggus() {
+        byte[] expected = OggusReference.audioPage(OggusReference.packets(Fixtures.EOS_PACKET),
+                true, Fixtures.EOS_GRANULE, Fixtures.SERIAL, Fixtures.EOS_SEQ);
+        OggPageWriter writer = new OggPageWriter();
+        writer.addPacket(ByteBuffer.wrap(Fixtures.packet(Fixtures.EOS_PACKET[0], Fixtures.EOS_PACKET[1])));
+        ByteBuffer page = writer.finishPage(OggPageWriter.FLAG_EOS, Fixtures.EOS_GRANULE, Fixtures.SERIAL, Fixtures.EOS_SEQ);
+        assertArrayEquals(expected, Fixtures.toArray(page));
+        assertArrayEquals(expected, Fixtures.load("eos-page"));
+    }
+}
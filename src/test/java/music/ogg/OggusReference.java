@@ -0,0 +1,74 @@
+package music.ogg;
+
+import org.chenliang.oggus.ogg.OggPage;
+import org.chenliang.oggus.opus.AudioDataPacket;
+import org.chenliang.oggus.opus.CommentHeader;
+import org.chenliang.oggus.opus.IdHeader;
+import org.chenliang.oggus.opus.OpusPackets;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Writes pages through oggus, exactly as MusicServerAudioProvider did before {@link OggPageWriter},
+ * so that the output of the new writer can be compared with it byte for byte.
+ */
+final class OggusReference {
+    private OggusReference() {}
+
+    /**
+     * Builds the identification and comment header pages, as headerPageZero() and headerPageOne() did.
+     */
+    static byte[] headerPages(int channelCount, int sampleRate, long serialNum) {
+        OggPage headerPage = OggPage.empty();
+        IdHeader header = IdHeader.emptyHeader();
+        header.setChannelCount(channelCount);
+        header.setInputSampleRate(sampleRate);
+        header.setMinorVersion(1);
+        headerPage.addDataPacket(header.dump());
+        headerPage.setSeqNum(0);
+        headerPage.setBOS();
+        headerPage.setSerialNum(serialNum);
+
+        OggPage commentPage = OggPage.empty();
+        CommentHeader comment = CommentHeader.emptyHeader();
+        comment.setVendor("libopus 1.1");
+        byte[] buf = new byte[764];
+        byte[] comm = comment.dump();
+        System.arraycopy(comm, 0, buf, 0, comm.length);
+        commentPage.addDataPacket(buf);
+        commentPage.setSeqNum(1);
+        commentPage.setSerialNum(serialNum);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.writeBytes(headerPage.dump());
+        out.writeBytes(commentPage.dump());
+        return out.toByteArray();
+    }
+
+    /**
+     * Builds an audio page, as provide20MsAudio() and flush() did.
+     */
+    static byte[] audioPage(byte[][] packets, boolean eos, long granulePosition, long serialNum, long seqNum) {
+        OggPage page = OggPage.empty();
+        for (byte[] data : packets) {
+            AudioDataPacket audioDataPacket = AudioDataPacket.empty();
+            audioDataPacket.addOpusPacket(OpusPackets.from(data));
+            page.addDataPacket(audioDataPacket.dump());
+        }
+        if (eos) {
+            page.setEOS();
+        }
+        page.setGranulePosition(granulePosition);
+        page.setSeqNum(seqNum);
+        page.setSerialNum(serialNum);
+        return page.dump();
+    }
+
+    static byte[][] packets(int[]... specs) {
+        byte[][] packets = new byte[specs.length][];
+        for (int i = 0; i < specs.length; i++) {
+            packets[i] = Fixtures.packet(specs[i][0], specs[i][1]);
+        }
+        return packets;
+    }
+}
@@ -0,0 +1,32 @@
+package music.ogg;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OpusHeaderPagesTest {
+    @Test
+    void buildsHeaderPages() {
+        ByteBuffer pages = OpusHeaderPages.get(2, 48000, Fixtures.SERIAL);
+        assertArrayEquals(Fixtures.load("opus-header-pages"), Fixtures.toArray(pages));
+    }
+
+    @Test
+    void patchesSerialIntoCachedTemplate() {
+        // the template of the format is built by the first call, and must not keep its serial number
+        OpusHeaderPages.get(2, 48000, 0x0BADCAFE);
+        ByteBuffer pages = OpusHeaderPages.get(2, 48000, Fixtures.SERIAL);
+        assertArrayEquals(Fixtures.load("opus-header-pages"), Fixtures.toArray(pages));
+    }
+
+    @Test
+    void returnsIndependentBuffers() {
+        ByteBuffer first = OpusHeaderPages.get(1, 44100, 1);
+        first.position(first.limit());
+        ByteBuffer second = OpusHeaderPages.get(1, 44100, 1);
+        assertEquals(0, second.position());
+        assertTrue(second.isReadOnly());
+    }
+}
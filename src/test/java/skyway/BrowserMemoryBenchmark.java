@@ -0,0 +1,76 @@
+package skyway;
+
+import log.ConsoleLogger;
+import log.Logger;
+import org.openqa.selenium.chrome.ChromeDriver;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the browser memory per channel in window mode (one Chrome per channel)
+ * and in tab mode (one tab per channel in a shared Chrome), the same way {@link SkywayApiImpl} logs it.
+ * Each channel opens a page that streams a generated tone over a loopback WebRTC connection,
+ * standing in for a client page sending to its room, so that no Skyway room is needed.
+ * Not run as a test. Run once per mode, so that no browser of the other mode is counted, after {@code mvn test-compile}:
+ * {@code CHROME_BIN=/usr/bin/chromium java -cp target/classes:target/test-classes:<dependencies>
+ * skyway.BrowserMemoryBenchmark window|tab [max channels]}
+ */
+public class BrowserMemoryBenchmark {
+    private static final long SETTLE_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    private static final String PAGE = "<!DOCTYPE html><html><body><script>"
+            + "const ctx = new AudioContext();"
+            + "const osc = ctx.createOscillator();"
+            + "const dest = ctx.createMediaStreamDestination();"
+            + "osc.connect(dest); osc.start();"
+            + "const a = new RTCPeerConnection(), b = new RTCPeerConnection();"
+            + "a.onicecandidate = e => e.candidate && b.addIceCandidate(e.candidate);"
+            + "b.onicecandidate = e => e.candidate && a.addIceCandidate(e.candidate);"
+            + "b.ontrack = e => { const el = new Audio(); el.srcObject = e.streams[0]; el.play(); };"
+            + "dest.stream.getTracks().forEach(t => a.addTrack(t, dest.stream));"
+            + "(async () => {"
+            + "  await a.setLocalDescription(await a.createOffer()); await b.setRemoteDescription(a.localDescription);"
+            + "  await b.setLocalDescription(await b.createAnswer()); await a.setRemoteDescription(b.localDescription);"
+            + "})();"
+            + "</script></body></html>";
+
+    public static void main(String[] args) throws InterruptedException {
+        boolean tabMode = args.length > 0 && "tab".equals(args[0]);
+        int maxChannels = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        Logger logger = new ConsoleLogger(TimeZone.getDefault());
+        String url = "data:text/html," + URLEncoder.encode(PAGE, StandardCharsets.UTF_8).replace("+", "%20");
+
+        SharedBrowser shared = tabMode ? new SharedBrowser(logger) : null;
+        List<ChromeDriver> windows = new ArrayList<>();
+        List<BrowserSession> tabs = new ArrayList<>();
+        System.out.printf("mode %s%nchannels  total RSS MB  RSS per channel MB%n", tabMode ? "tab" : "window");
+        try {
+            for (int channels = 1; channels <= maxChannels; channels++) {
+                if (tabMode) {
+                    BrowserSession tab = shared.openTab();
+                    tab.open(url);
+                    tabs.add(tab);
+                } else {
+                    ChromeDriver driver = ChromeDriverPool.launch();
+                    driver.get(url);
+                    windows.add(driver);
+                }
+                Thread.sleep(SETTLE_MILLIS);
+                long rss = BrowserMemory.residentBytes();
+                System.out.printf("%8d  %12d  %18d%n", channels, rss >> 20, (rss / channels) >> 20);
+            }
+        } finally {
+            // quits the shared browser, along with all of its tabs
+            if (!tabs.isEmpty()) {
+                tabs.get(0).destroy();
+            }
+            for (ChromeDriver driver : windows) {
+                driver.quit();
+            }
+        }
+    }
+}
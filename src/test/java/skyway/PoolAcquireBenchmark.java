@@ -0,0 +1,62 @@
+package skyway;
+
+import log.ConsoleLogger;
+import log.Logger;
+import org.openqa.selenium.chrome.ChromeDriver;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time a join waits for a browser session: launching a new Chrome for every join,
+ * as before {@link ChromeDriverPool}, against taking a warm session from the pool.
+ * Between warm rounds, the session is given back and the pool is left time to reset it, as between two joins.
+ * Not run as a test. Run with, after {@code mvn test-compile}:
+ * {@code CHROME_BIN=/usr/bin/chromium java -cp target/classes:target/test-classes:<dependencies>
+ * skyway.PoolAcquireBenchmark [rounds]}
+ */
+public class PoolAcquireBenchmark {
+    private static final long SETTLE_MILLIS = TimeUnit.SECONDS.toMillis(3);
+
+    public static void main(String[] args) throws InterruptedException {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        Logger logger = new ConsoleLogger(TimeZone.getDefault());
+
+        long[] cold = new long[rounds];
+        for (int i = 0; i < rounds; i++) {
+            long start = System.nanoTime();
+            ChromeDriver driver = ChromeDriverPool.launch();
+            cold[i] = System.nanoTime() - start;
+            driver.quit();
+        }
+
+        ChromeDriverPool pool = new ChromeDriverPool(logger);
+        long[] warm = new long[rounds];
+        try {
+            // let the pool launch its first idle session
+            Thread.sleep(SETTLE_MILLIS);
+            for (int i = 0; i < rounds; i++) {
+                long start = System.nanoTime();
+                ChromeDriver driver = pool.acquire();
+                warm[i] = System.nanoTime() - start;
+                pool.release(driver);
+                Thread.sleep(SETTLE_MILLIS);
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        System.out.println("acquire  median ms  max ms");
+        print("cold", cold);
+        print("warm", warm);
+    }
+
+    private static void print(String name, long[] nanos) {
+        long[] sorted = nanos.clone();
+        Arrays.sort(sorted);
+        System.out.printf("%-7s  %9d  %6d%n", name,
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length / 2]),
+                TimeUnit.NANOSECONDS.toMillis(sorted[sorted.length - 1]));
+    }
+}